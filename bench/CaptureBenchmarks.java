@@ -0,0 +1,332 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmarks of the hot paths of the viewers : opening a capture (counting its
+ * frames), sequential playback, seeking, stepping backwards, parsing the live
+ * text stream, detecting the line in a frame and painting a frame. Each
+ * benchmark reports its throughput, the distribution of the latency of one
+ * operation, and the number of bytes allocated per operation, so that
+ * performance improvements can be proven, and regressions caught.
+ * <p/>
+ * The captures are generated in the temporary directory (or the directory
+ * given by the <code>kjunior.bench.dir</code> system property), with 1K and
+ * 1M frames. The 100M frames capture takes about 40 GB of disk, so it is only
+ * generated when <code>--huge</code> is given.
+ * <p/>
+ * Usage, from the root of the project :
+ * <pre>
+ * javac -d out src/*.java bench/*.java
+ * java -Djava.awt.headless=true -cp out CaptureBenchmarks [--huge] [benchmark...]
+ * </pre>
+ * where the benchmarks are : open, playback, seek, reverse, parse, detect,
+ * paint (all of them by default).
+ */
+public class CaptureBenchmarks {
+
+    private static final int WARMUP_SECONDS = 2, MEASURE_SECONDS = 5;
+    private static final int LATENCY_SAMPLES = 1 << 16;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+
+    /**
+     * a benchmarked operation
+     */
+    abstract static class Benchmark {
+
+        final String name;
+
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+
+        /**
+         * called once before the warmup
+         */
+        void setUp() throws IOException {
+        }
+
+
+        /**
+         * the operation measured
+         *
+         * @param i the number of the operation
+         */
+        abstract void run(int i) throws IOException;
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        boolean huge = false;
+        List<String> selected = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("--huge")) {
+                huge = true;
+            } else {
+                selected.add(arg);
+            }
+        }
+
+        File directory = new File(System.getProperty("kjunior.bench.dir",
+                System.getProperty("java.io.tmpdir")));
+        int[] sizes = huge ? new int[]{1000, 1000000, 100000000} : new int[]{1000, 1000000};
+
+        System.out.println(String.format(Locale.ROOT, "%-28s %14s %10s %10s %10s %12s",
+                "benchmark", "ops/s", "p50 us", "p99 us", "max us", "bytes/op"));
+        for (int size : sizes) {
+            String capture = generate(directory, size);
+            for (Benchmark benchmark : benchmarks(capture, size)) {
+                String kind = benchmark.name.substring(0, benchmark.name.indexOf(' '));
+                if (selected.isEmpty() || selected.contains(kind)) {
+                    measure(benchmark);
+                }
+            }
+        }
+        System.exit(0); // stops the timers of the analysers
+    }
+
+
+    private static Benchmark[] benchmarks(final String capture, final int size) {
+        final String suffix = " " + (size >= 1000000 ? size / 1000000 + "M" : size / 1000 + "K");
+
+        return new Benchmark[]{
+                // getNbrOfLines : indexes the whole file, without its sidecar
+                new Benchmark("open" + suffix) {
+                    @Override
+                    void run(int i) throws IOException {
+                        new File(capture + CaptureIndex.SIDECAR_EXTENSION).delete();
+                        Capture opened = Captures.open(capture);
+                        opened.getNbrOfFrames();
+                        opened.close();
+                    }
+                },
+
+                // parseFromFile : reads the frames one after another
+                new Benchmark("playback" + suffix) {
+                    RobotLinearCamAnalyser analyser;
+
+                    @Override
+                    void setUp() throws IOException {
+                        analyser = openAnalyser(capture);
+                    }
+
+                    @Override
+                    void run(int i) throws IOException {
+                        analyser.parseFromFile();
+                    }
+                },
+
+                // goToFrame : seeks to random frames
+                new Benchmark("seek" + suffix) {
+                    RobotLinearCamAnalyser analyser;
+                    int[] targets = new int[4096];
+
+                    @Override
+                    void setUp() throws IOException {
+                        analyser = openAnalyser(capture);
+                        Random random = new Random(42);
+                        for (int i = 0; i < targets.length; i++)
+                            targets[i] = random.nextInt(analyser.getNbrOfLines());
+                    }
+
+                    @Override
+                    void run(int i) throws IOException {
+                        analyser.goToFrame(targets[i & (targets.length - 1)]);
+                    }
+                },
+
+                // goToFrame : steps backwards, as the previous button and
+                // reverse scrubbing do
+                new Benchmark("reverse" + suffix) {
+                    RobotLinearCamAnalyser analyser;
+
+                    @Override
+                    void setUp() throws IOException {
+                        analyser = openAnalyser(capture);
+                    }
+
+                    @Override
+                    void run(int i) throws IOException {
+                        int frame = analyser.getCurrentFrame();
+                        analyser.goToFrame(frame > 0 ? frame - 1 : analyser.getNbrOfLines() - 1);
+                    }
+                },
+
+                // the character loop of the live viewers : one line per
+                // operation
+                new Benchmark("parse" + suffix) {
+                    byte[] text;
+                    int[] lineStarts;
+                    PixelParser parser = new PixelParser(new int[Capture.FRAME_WIDTH]);
+
+                    @Override
+                    void setUp() {
+                        Random random = new Random(42);
+                        StringBuilder builder = new StringBuilder();
+                        lineStarts = new int[1024 + 1];
+                        for (int l = 0; l < 1024; l++) {
+                            lineStarts[l] = builder.length();
+                            appendLine(builder, random);
+                        }
+                        lineStarts[1024] = builder.length();
+                        text = builder.toString().getBytes();
+                    }
+
+                    @Override
+                    void run(int i) {
+                        int line = i & 1023;
+                        parser.parse(text, lineStarts[line], lineStarts[line + 1]);
+                    }
+                },
+
+                // LineDetector : finds the line in one frame per operation
+                new Benchmark("detect" + suffix) {
+                    int[][] lines = new int[1024][Capture.FRAME_WIDTH];
+                    LineDetector detector = new LineDetector();
+                    LineDetector.Line line = new LineDetector.Line();
+
+                    @Override
+                    void setUp() throws IOException {
+                        Capture frames = Captures.open(capture);
+                        for (int l = 0; l < lines.length; l++)
+                            frames.readFrame(l % frames.getNbrOfFrames(), lines[l]);
+                        frames.close();
+                    }
+
+                    @Override
+                    void run(int i) {
+                        detector.detect(lines[i & 1023], line);
+                    }
+                },
+
+                // paint : draws a whole frame of the analyser
+                new Benchmark("paint" + suffix) {
+                    RobotLinearCamAnalyser analyser;
+                    Graphics graphics;
+
+                    @Override
+                    void setUp() throws IOException {
+                        analyser = openAnalyser(capture);
+                        analyser.setSize(analyser.getPreferredSize());
+                        graphics = new BufferedImage(analyser.getWidth(), analyser.getHeight(),
+                                BufferedImage.TYPE_INT_RGB).createGraphics();
+                    }
+
+                    @Override
+                    void run(int i) throws IOException {
+                        analyser.parseFromFile();
+                        analyser.paint(graphics);
+                    }
+                },
+        };
+    }
+
+
+    /**
+     * opens an analyser on a capture, and waits until the capture is indexed :
+     * the analyser indexes it in the background, so that it would have no
+     * frames yet, and the indexing would compete with the benchmark. The
+     * playback is paused : the benchmark reads the frames itself.
+     */
+    private static RobotLinearCamAnalyser openAnalyser(String capture) throws IOException {
+        RobotLinearCamAnalyser analyser = new RobotLinearCamAnalyser(capture, Integer.MAX_VALUE);
+        analyser.getPlaybackEngine().pause();
+        try {
+            while (!analyser.isIndexed())
+                Thread.sleep(10);
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while indexing " + capture);
+        }
+        return analyser;
+    }
+
+
+    /**
+     * warms the benchmark up, then measures it.
+     */
+    private static void measure(Benchmark benchmark) throws IOException {
+        benchmark.setUp();
+
+        long end = System.nanoTime() + WARMUP_SECONDS * 1000000000L;
+        int i = 0;
+        while (System.nanoTime() < end)
+            benchmark.run(i++);
+
+        long thread = Thread.currentThread().getId();
+        long[] latencies = new long[LATENCY_SAMPLES];
+        long operations = 0;
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        end = start + MEASURE_SECONDS * 1000000000L;
+        long now = start;
+        while (now < end) {
+            benchmark.run(i++);
+            long after = System.nanoTime();
+            latencies[(int) (operations % LATENCY_SAMPLES)] = after - now;
+            operations++;
+            now = after;
+        }
+        long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+        int samples = (int) Math.min(operations, LATENCY_SAMPLES);
+        Arrays.sort(latencies, 0, samples);
+        System.out.println(String.format(Locale.ROOT, "%-28s %14.1f %10.2f %10.2f %10.2f %12.1f",
+                benchmark.name,
+                operations * 1e9 / (now - start),
+                latencies[samples / 2] / 1000.0,
+                latencies[(int) (samples * 0.99)] / 1000.0,
+                latencies[samples - 1] / 1000.0,
+                (double) allocated / operations));
+    }
+
+
+    /**
+     * generates a text capture of random frames, unless it already exists.
+     *
+     * @return the path of the capture
+     */
+    private static String generate(File directory, int nbrOfFrames) throws IOException {
+        File file = new File(directory, "kjunior-bench-" + nbrOfFrames + ".txt");
+        if (file.isFile())
+            return file.getPath();
+
+        System.err.println("generating " + file + "...");
+        Random random = new Random(nbrOfFrames);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        try {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < nbrOfFrames; i++) {
+                builder.setLength(0);
+                appendLine(builder, random);
+                out.write(builder.toString().getBytes("US-ASCII"));
+            }
+        } finally {
+            out.close();
+        }
+        return file.getPath();
+    }
+
+
+    private static void appendLine(StringBuilder builder, Random random) {
+        for (int p = 0; p < Capture.FRAME_WIDTH; p++) {
+            builder.append(random.nextInt(256));
+            builder.append(p < Capture.FRAME_WIDTH - 1 ? ' ' : '\n');
+        }
+    }
+
+}
@@ -0,0 +1,294 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A compressed capture file : the frames are stored in chunks compressed
+ * independently of each other, so that reading a frame only decompresses the
+ * chunk holding it.
+ * <p/>
+ * File format :
+ * <ul>
+ * <li>a header of 16 bytes : the magic number "KJLZ", the version of the
+ * format (2 bytes), flags (2 bytes, the same as {@link BinaryCapture}), the
+ * number of pixels of a frame (2 bytes, always 102), the number of frames per
+ * chunk (4 bytes) and 2 reserved bytes. All the numbers are big endian.</li>
+ * <li>then the chunks, each one compressed with deflate. Once decompressed, a
+ * chunk holds its frames as in a binary capture (the timestamp, if any, then
+ * the 102 values), except that each frame is stored as its difference with
+ * the previous frame of the chunk, byte by byte : as consecutive lines are
+ * much alike, the differences are mostly small and compress well. The first
+ * frame of a chunk is stored as is.</li>
+ * <li>then the footer : the position of each chunk in the file (8 bytes
+ * each), the number of frames (4 bytes), the number of chunks (4 bytes), and
+ * the position of the footer (8 bytes), which makes the last 8 bytes of the
+ * file.</li>
+ * </ul>
+ * Each thread keeps the last chunk it decompressed, so reading the frames in
+ * sequence decompresses each chunk only once, and threads reading different
+ * parts of the archive do not evict each other's chunk. Closing the archive
+ * empties the caches of every thread, so a closed archive keeps no chunk in
+ * memory.
+ * <p/>
+ * Use {@link ArchiveWriter} to write such a file, and {@link CaptureConverter}
+ * to convert another capture.
+ */
+public class ArchiveCapture implements Capture {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    /**
+     * the usual extension of the archives
+     */
+    public static final String EXTENSION = ".kjz";
+
+    static final byte[] MAGIC = {'K', 'J', 'L', 'Z'};
+
+    /**
+     * a decompressed chunk
+     */
+    private static class Chunk {
+        final int chunkNbr;
+        final byte[] records; // the frames, as in a binary capture
+
+        Chunk(int chunkNbr, byte[] records) {
+            this.chunkNbr = chunkNbr;
+            this.records = records;
+        }
+    }
+
+
+    private static final Chunk NONE = new Chunk(-1, null); // an empty cache
+
+
+    private final String filepath;
+    private final FileChannel channel;
+    private final int flags;
+    private final int recordSize;
+    private final int pixelsOffset; // position of the pixels in a record
+    private final int framesPerChunk;
+    private final int nbrOfFrames;
+    private final long[] chunkPositions; // the end of the last chunk included
+    // the last chunk decompressed by each thread, in a cache of one chunk
+    // which close() can empty
+    private final List<Chunk[]> caches = new ArrayList<Chunk[]>(); // guarded by itself
+    private final ThreadLocal<Chunk[]> lastChunk = new ThreadLocal<Chunk[]>() {
+        @Override
+        protected Chunk[] initialValue() {
+            Chunk[] cache = {NONE};
+            synchronized (caches) {
+                caches.add(cache);
+            }
+            return cache;
+        }
+    };
+
+
+    /**
+     * opens the file and reads its header and its footer.
+     *
+     * @param filepath the archive
+     * @throws IOException if the file is not an archive, or if its version is
+     *                     not supported
+     */
+    public ArchiveCapture(String filepath) throws IOException {
+        this.filepath = filepath;
+        this.channel = new RandomAccessFile(filepath, "r").getChannel();
+        long length = channel.size();
+        if (length < HEADER_SIZE + 24)
+            throw new IOException(filepath + " is not a capture archive");
+
+        ByteBuffer header = read(0, HEADER_SIZE);
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!isMagic(magic))
+            throw new IOException(filepath + " is not a capture archive");
+        int version = header.getShort() & 0xFFFF;
+        this.flags = header.getShort() & 0xFFFF;
+        int width = header.getShort() & 0xFFFF;
+        this.framesPerChunk = header.getInt();
+        if (version != VERSION)
+            throw new IOException("unsupported capture archive version : " + version);
+        if (width != FRAME_WIDTH)
+            throw new IOException("unsupported frame width : " + width);
+
+        long footerPosition = read(length - 8, 8).getLong();
+        ByteBuffer counts = read(length - 16, 8);
+        this.nbrOfFrames = counts.getInt();
+        int nbrOfChunks = counts.getInt();
+        if (footerPosition + nbrOfChunks * 8L + 16 != length || framesPerChunk <= 0)
+            throw new IOException(filepath + " is truncated or corrupted");
+
+        this.chunkPositions = new long[nbrOfChunks + 1];
+        ByteBuffer positions = read(footerPosition, nbrOfChunks * 8);
+        for (int i = 0; i < nbrOfChunks; i++)
+            chunkPositions[i] = positions.getLong();
+        chunkPositions[nbrOfChunks] = footerPosition;
+
+        this.recordSize = BinaryCapture.getRecordSize(flags);
+        this.pixelsOffset = recordSize - FRAME_WIDTH;
+    }
+
+
+    /**
+     * @param bytes the first bytes of a file
+     * @return true if they start with the magic number of the archives
+     */
+    public static boolean isMagic(byte[] bytes) {
+        if (bytes.length < MAGIC.length)
+            return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i])
+                return false;
+        }
+        return true;
+    }
+
+
+    @Override
+    public int getNbrOfFrames() {
+        return nbrOfFrames;
+    }
+
+
+    @Override
+    public void readFrame(int frameNbr, int[] pixels) {
+        byte[] records = getChunk(frameNbr / framesPerChunk).records;
+        int position = (frameNbr % framesPerChunk) * recordSize + pixelsOffset;
+        for (int i = 0; i < FRAME_WIDTH; i++)
+            pixels[i] = records[position + i] & 0xFF;
+    }
+
+
+    @Override
+    public boolean hasTimestamps() {
+        return (flags & BinaryCapture.FLAG_TIMESTAMPS) != 0;
+    }
+
+
+    @Override
+    public long getTimestamp(int frameNbr) {
+        if (!hasTimestamps())
+            return -1;
+        byte[] records = getChunk(frameNbr / framesPerChunk).records;
+        int position = (frameNbr % framesPerChunk) * recordSize;
+        long timestamp = 0;
+        for (int i = 0; i < 8; i++)
+            timestamp = (timestamp << 8) | (records[position + i] & 0xFF);
+        return timestamp;
+    }
+
+
+    /**
+     * closes the file, and drops the chunks cached by every thread. The
+     * frames must not be read anymore.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        synchronized (caches) {
+            for (Chunk[] cache : caches)
+                cache[0] = NONE;
+            caches.clear();
+        }
+    }
+
+
+    /**
+     * @return the number of frames per chunk
+     */
+    public int getFramesPerChunk() {
+        return framesPerChunk;
+    }
+
+
+    /**
+     * @return the chunk, decompressed, from the cache if it was the last one
+     * read by this thread
+     */
+    private Chunk getChunk(int chunkNbr) {
+        Chunk[] cache = lastChunk.get();
+        Chunk chunk = cache[0];
+        if (chunk.chunkNbr != chunkNbr) {
+            try {
+                chunk = new Chunk(chunkNbr, decompress(chunkNbr));
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot read chunk " + chunkNbr + " of " + filepath, e);
+            }
+            cache[0] = chunk;
+        }
+        return chunk;
+    }
+
+
+    private byte[] decompress(int chunkNbr) throws IOException {
+        int frames = Math.min(framesPerChunk, nbrOfFrames - chunkNbr * framesPerChunk);
+        byte[] records = new byte[frames * recordSize];
+        ByteBuffer compressed = read(chunkPositions[chunkNbr],
+                (int) (chunkPositions[chunkNbr + 1] - chunkPositions[chunkNbr]));
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            int length = 0;
+            while (length < records.length && !inflater.finished()) {
+                int n = inflater.inflate(records, length, records.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                length += n;
+            }
+            if (length < records.length)
+                throw new EOFException("chunk " + chunkNbr + " of " + filepath + " is truncated");
+        } catch (DataFormatException e) {
+            throw new IOException("chunk " + chunkNbr + " of " + filepath + " is corrupted", e);
+        } finally {
+            inflater.end();
+        }
+
+        // undoes the differences : the timestamps as numbers, the pixels
+        // byte by byte
+        for (int f = 1; f < frames; f++) {
+            int position = f * recordSize, previous = position - recordSize;
+            if (pixelsOffset > 0)
+                putLong(records, position, getLong(records, position) + getLong(records, previous));
+            for (int i = pixelsOffset; i < recordSize; i++)
+                records[position + i] += records[previous + i];
+        }
+        return records;
+    }
+
+
+    static long getLong(byte[] bytes, int position) {
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+            value = (value << 8) | (bytes[position + i] & 0xFF);
+        return value;
+    }
+
+
+    static void putLong(byte[] bytes, int position, long value) {
+        for (int i = 0; i < 8; i++)
+            bytes[position + i] = (byte) (value >>> ((7 - i) * 8));
+    }
+
+
+    /**
+     * reads bytes of the file. Safe to call from several threads.
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException(filepath + " is truncated");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+}
@@ -0,0 +1,156 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes frames in the compressed format described in {@link ArchiveCapture}.
+ * The frames of a chunk are kept in memory until the chunk is full, then
+ * compressed and written : {@link #close()} must be called once all the
+ * frames are written, to write the last chunk and the footer.
+ */
+public class ArchiveWriter implements CaptureWriter {
+
+    /**
+     * the default number of frames per chunk
+     */
+    public static final int FRAMES_PER_CHUNK = 4096;
+
+    private final OutputStream out;
+    private long position = 0; // in the file
+    private final boolean timestamps;
+    private final int recordSize;
+    private final int framesPerChunk;
+
+    private final byte[] chunk; // the frames of the current chunk, as differences
+    private final byte[] previous; // the last frame, as is
+    private final byte[] compressed = new byte[1 << 16];
+    private final Deflater deflater = new Deflater();
+    private int framesInChunk = 0;
+    private int nbrOfFrames = 0;
+    private long[] chunkPositions = new long[64];
+    private int nbrOfChunks = 0;
+
+
+    /**
+     * creates the file and writes its header, with the default number of
+     * frames per chunk.
+     *
+     * @param filepath   the file to create
+     * @param timestamps whether the frames carry their timestamp
+     * @throws IOException
+     */
+    public ArchiveWriter(String filepath, boolean timestamps) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(filepath), 1 << 16), timestamps,
+                FRAMES_PER_CHUNK);
+    }
+
+
+    /**
+     * writes the header of the archive to the given stream.
+     *
+     * @param out            the stream receiving the archive
+     * @param timestamps     whether the frames carry their timestamp
+     * @param framesPerChunk the number of frames per chunk : the more, the
+     *                       better the compression, but the longer a seek
+     * @throws IOException
+     */
+    public ArchiveWriter(OutputStream out, boolean timestamps, int framesPerChunk) throws IOException {
+        this.out = out;
+        this.timestamps = timestamps;
+        this.framesPerChunk = framesPerChunk;
+        int flags = timestamps ? BinaryCapture.FLAG_TIMESTAMPS : 0;
+        this.recordSize = BinaryCapture.getRecordSize(flags);
+        this.chunk = new byte[framesPerChunk * recordSize];
+        this.previous = new byte[recordSize];
+
+        byte[] header = new byte[ArchiveCapture.HEADER_SIZE];
+        System.arraycopy(ArchiveCapture.MAGIC, 0, header, 0, ArchiveCapture.MAGIC.length);
+        header[5] = ArchiveCapture.VERSION;
+        header[7] = (byte) flags;
+        header[8] = (byte) (Capture.FRAME_WIDTH >> 8);
+        header[9] = (byte) Capture.FRAME_WIDTH;
+        for (int i = 0; i < 4; i++)
+            header[10 + i] = (byte) (framesPerChunk >>> ((3 - i) * 8));
+        write(header, header.length);
+    }
+
+
+    @Override
+    public void writeFrame(int[] pixels, long timestamp) throws IOException {
+        int position = framesInChunk * recordSize;
+        int offset = 0;
+        if (timestamps) {
+            long difference = framesInChunk == 0 ? timestamp
+                    : timestamp - ArchiveCapture.getLong(previous, 0);
+            ArchiveCapture.putLong(chunk, position, difference);
+            ArchiveCapture.putLong(previous, 0, timestamp);
+            offset = 8;
+        }
+        for (int i = 0; i < Capture.FRAME_WIDTH; i++, offset++) {
+            int value = pixels[i];
+            byte b = (byte) (value < 0 ? 0 : value > 255 ? 255 : value);
+            chunk[position + offset] = framesInChunk == 0 ? b : (byte) (b - previous[offset]);
+            previous[offset] = b;
+        }
+
+        nbrOfFrames++;
+        if (++framesInChunk == framesPerChunk)
+            writeChunk();
+    }
+
+
+    /**
+     * compresses the current chunk and writes it.
+     */
+    private void writeChunk() throws IOException {
+        if (nbrOfChunks == chunkPositions.length)
+            chunkPositions = Arrays.copyOf(chunkPositions, nbrOfChunks * 2);
+        chunkPositions[nbrOfChunks++] = position;
+
+        deflater.reset();
+        deflater.setInput(chunk, 0, framesInChunk * recordSize);
+        deflater.finish();
+        while (!deflater.finished())
+            write(compressed, deflater.deflate(compressed));
+        framesInChunk = 0;
+    }
+
+
+    private void write(byte[] bytes, int length) throws IOException {
+        out.write(bytes, 0, length);
+        position += length;
+    }
+
+
+    /**
+     * writes the last chunk and the footer, and closes the file.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (framesInChunk > 0)
+                writeChunk();
+
+            long footerPosition = position;
+            byte[] footer = new byte[nbrOfChunks * 8 + 16];
+            for (int i = 0; i < nbrOfChunks; i++)
+                ArchiveCapture.putLong(footer, i * 8, chunkPositions[i]);
+            int offset = nbrOfChunks * 8;
+            for (int i = 0; i < 4; i++) {
+                footer[offset + i] = (byte) (nbrOfFrames >>> ((3 - i) * 8));
+                footer[offset + 4 + i] = (byte) (nbrOfChunks >>> ((3 - i) * 8));
+            }
+            ArchiveCapture.putLong(footer, offset + 8, footerPosition);
+            write(footer, footer.length);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+}
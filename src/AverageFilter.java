@@ -0,0 +1,53 @@
+/**
+ * Smooths each pixel over time with an exponential moving average : the
+ * value of a pixel moves towards each new value by a fixed part of the
+ * difference. The smaller the part, the smoother, and the slower to follow a
+ * change.
+ * <p/>
+ * The averages are kept in fixed point (1/256 of a gray level), so that the
+ * filter is a few integer operations per pixel, without branch.
+ */
+public class AverageFilter implements FrameFilter {
+
+    private static final int SHIFT = 8; // the fixed point of the averages
+
+    private final int weight; // of the new value, in 1/256
+    private final int[] averages = new int[Capture.FRAME_WIDTH]; // in 1/256 of a gray level
+    private boolean started = false;
+
+
+    /**
+     * @param alpha the part of the difference with a new value the average
+     *              moves by, between 0 (excluded) and 1
+     */
+    public AverageFilter(double alpha) {
+        if (!(alpha > 0 && alpha <= 1))
+            throw new IllegalArgumentException("the weight of a new value must be in (0, 1] : " + alpha);
+        this.weight = Math.max(1, (int) Math.round(alpha * (1 << SHIFT)));
+    }
+
+
+    @Override
+    public void filter(int[] pixels) {
+        int[] a = averages;
+        if (!started) {
+            for (int i = 0; i < a.length; i++)
+                a[i] = pixels[i] << SHIFT;
+            started = true;
+            return;
+        }
+
+        int w = weight;
+        for (int i = 0; i < a.length; i++) {
+            a[i] += ((pixels[i] << SHIFT) - a[i]) * w >> SHIFT;
+            pixels[i] = (a[i] + (1 << (SHIFT - 1))) >> SHIFT;
+        }
+    }
+
+
+    @Override
+    public void reset() {
+        started = false;
+    }
+
+}
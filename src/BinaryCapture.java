@@ -0,0 +1,213 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A capture file in the binary format, mapped in memory.
+ * <p/>
+ * File format :
+ * <ul>
+ * <li>a header of 16 bytes : the magic number "KJLC", the version of the
+ * format (2 bytes), flags (2 bytes), the number of pixels of a frame (2 bytes,
+ * always 102) and 6 reserved bytes. All the numbers are big endian.</li>
+ * <li>then the frames, appended one after another. Each frame starts with the
+ * time at which it was captured (8 bytes, microseconds since the epoch) if
+ * the {@link #FLAG_TIMESTAMPS} flag is set, then its sequence number in the
+ * stream it was received from (8 bytes) if the {@link #FLAG_SEQUENCES} flag
+ * is set, followed by the 102 grayscale values, one unsigned byte each.</li>
+ * </ul>
+ * All the frames have the same size, so finding one is a multiplication.
+ * <p/>
+ * Use {@link BinaryCaptureWriter} to write such a file, and
+ * {@link CaptureConverter} to convert a text capture.
+ */
+public class BinaryCapture implements Capture {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    /**
+     * flag set when each frame is preceded by its timestamp
+     */
+    public static final int FLAG_TIMESTAMPS = 1;
+    /**
+     * flag set when each frame carries its sequence number, after its
+     * timestamp
+     */
+    public static final int FLAG_SEQUENCES = 2;
+
+    static final byte[] MAGIC = {'K', 'J', 'L', 'C'};
+
+    private final MappedFile file;
+    private final int flags;
+    private final int recordSize;
+    private final int pixelsOffset; // position of the pixels in a record
+    private final int sequenceOffset; // position of the sequence number in a record
+
+
+    /**
+     * maps the file and checks its header.
+     *
+     * @param filepath the capture file
+     * @throws IOException if the file is not a binary capture or if its
+     *                     version is not supported
+     */
+    public BinaryCapture(String filepath) throws IOException {
+        this.file = new MappedFile(filepath);
+
+        byte[] header = new byte[HEADER_SIZE];
+        if (file.length() < HEADER_SIZE)
+            throw new IOException(filepath + " is not a binary capture");
+        for (int i = 0; i < HEADER_SIZE; i++)
+            header[i] = file.get(i);
+        this.flags = parseHeader(new DataInputStream(new ByteArrayInputStream(header)));
+        if (flags < 0)
+            throw new IOException(filepath + " is not a binary capture");
+
+        this.recordSize = getRecordSize(flags);
+        this.pixelsOffset = recordSize - FRAME_WIDTH;
+        this.sequenceOffset = hasTimestamps() ? 8 : 0;
+    }
+
+
+    /**
+     * @param bytes the first bytes of a file or a stream
+     * @return true if they start with the magic number of the binary format
+     */
+    public static boolean isMagic(byte[] bytes) {
+        if (bytes.length < MAGIC.length)
+            return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i])
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * reads the header of a binary capture from a stream, if there is one. The
+     * stream must support mark/reset : if it does not start with the magic
+     * number, it is reset to where it was, so that it can be read as a text
+     * capture.
+     *
+     * @param in the stream
+     * @return the flags of the capture, or -1 if the stream does not start with
+     * a binary header
+     * @throws IOException if the version of the format is not supported
+     */
+    public static int readHeader(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        byte[] magic = new byte[MAGIC.length];
+        int read = 0, n;
+        while (read < magic.length && (n = in.read(magic, read, magic.length - read)) > 0)
+            read += n;
+        in.reset();
+        if (read < magic.length || !isMagic(magic))
+            return -1;
+
+        return parseHeader(new DataInputStream(in));
+    }
+
+
+    /**
+     * reads a whole header, magic number included.
+     *
+     * @return the flags, or -1 if the magic number does not match
+     */
+    private static int parseHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!isMagic(magic))
+            return -1;
+
+        int version = in.readUnsignedShort();
+        int flags = in.readUnsignedShort();
+        int width = in.readUnsignedShort();
+        in.readFully(new byte[HEADER_SIZE - 10]); // reserved
+        if (version != VERSION)
+            throw new IOException("unsupported binary capture version : " + version);
+        if (width != FRAME_WIDTH)
+            throw new IOException("unsupported frame width : " + width);
+        return flags;
+    }
+
+
+    /**
+     * @param flags the flags of the capture
+     * @return the size of a frame in the file, in bytes
+     */
+    public static int getRecordSize(int flags) {
+        return ((flags & FLAG_TIMESTAMPS) != 0 ? 8 : 0)
+                + ((flags & FLAG_SEQUENCES) != 0 ? 8 : 0) + FRAME_WIDTH;
+    }
+
+
+    @Override
+    public int getNbrOfFrames() {
+        // an incomplete last frame (file still being written) is ignored
+        return (int) ((file.length() - HEADER_SIZE) / recordSize);
+    }
+
+
+    @Override
+    public void readFrame(int frameNbr, int[] pixels) {
+        long position = HEADER_SIZE + (long) frameNbr * recordSize + pixelsOffset;
+        for (int i = 0; i < FRAME_WIDTH; i++)
+            pixels[i] = file.get(position + i) & 0xFF;
+    }
+
+
+    @Override
+    public boolean hasTimestamps() {
+        return (flags & FLAG_TIMESTAMPS) != 0;
+    }
+
+
+    @Override
+    public long getTimestamp(int frameNbr) {
+        if (!hasTimestamps())
+            return -1;
+        return getLong(HEADER_SIZE + (long) frameNbr * recordSize);
+    }
+
+
+    /**
+     * @return true if the frames of this capture carry their sequence number
+     * in the stream they were received from
+     */
+    public boolean hasSequences() {
+        return (flags & FLAG_SEQUENCES) != 0;
+    }
+
+
+    /**
+     * @param frameNbr the frame, starting at 0
+     * @return the sequence number of the frame in the stream it was received
+     * from, or -1 if the capture has no sequence numbers : a jump between two
+     * frames tells that frames were lost before being recorded
+     */
+    public long getSequence(int frameNbr) {
+        if (!hasSequences())
+            return -1;
+        return getLong(HEADER_SIZE + (long) frameNbr * recordSize + sequenceOffset);
+    }
+
+
+    /**
+     * unmaps the file.
+     */
+    @Override
+    public void close() {
+        file.close();
+    }
+
+
+    private long getLong(long position) {
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+            value = (value << 8) | (file.get(position + i) & 0xFF);
+        return value;
+    }
+
+}
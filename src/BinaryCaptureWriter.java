@@ -0,0 +1,119 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes frames in the binary capture format described in
+ * {@link BinaryCapture}. The output is buffered : {@link #close()} must be
+ * called once all the frames are written.
+ */
+public class BinaryCaptureWriter implements CaptureWriter {
+
+    private final OutputStream out;
+    private final boolean timestamps, sequences;
+    private final byte[] record;
+
+
+    /**
+     * creates the file and writes its header.
+     *
+     * @param filepath   the file to create
+     * @param timestamps whether each frame is preceded by its timestamp
+     * @throws IOException
+     */
+    public BinaryCaptureWriter(String filepath, boolean timestamps) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(filepath), 1 << 16), timestamps);
+    }
+
+
+    /**
+     * writes the header of the capture to the given stream.
+     *
+     * @param out        the stream receiving the capture
+     * @param timestamps whether each frame is preceded by its timestamp
+     * @throws IOException
+     */
+    public BinaryCaptureWriter(OutputStream out, boolean timestamps) throws IOException {
+        this(out, timestamps, false);
+    }
+
+
+    /**
+     * writes the header of the capture to the given stream.
+     *
+     * @param out        the stream receiving the capture
+     * @param timestamps whether each frame is preceded by its timestamp
+     * @param sequences  whether each frame is preceded by its sequence number
+     *                   (see {@link #writeFrame(int[], long, long)})
+     * @throws IOException
+     */
+    public BinaryCaptureWriter(OutputStream out, boolean timestamps, boolean sequences) throws IOException {
+        this.out = out;
+        this.timestamps = timestamps;
+        this.sequences = sequences;
+        int flags = (timestamps ? BinaryCapture.FLAG_TIMESTAMPS : 0)
+                | (sequences ? BinaryCapture.FLAG_SEQUENCES : 0);
+        this.record = new byte[BinaryCapture.getRecordSize(flags)];
+
+        byte[] header = new byte[BinaryCapture.HEADER_SIZE];
+        System.arraycopy(BinaryCapture.MAGIC, 0, header, 0, BinaryCapture.MAGIC.length);
+        header[5] = BinaryCapture.VERSION;
+        header[7] = (byte) flags;
+        header[8] = (byte) (Capture.FRAME_WIDTH >> 8);
+        header[9] = (byte) Capture.FRAME_WIDTH;
+        out.write(header);
+    }
+
+
+    @Override
+    public void writeFrame(int[] pixels, long timestamp) throws IOException {
+        writeFrame(pixels, timestamp, -1);
+    }
+
+
+    /**
+     * writes a frame with its sequence number, if the capture has them.
+     *
+     * @param pixels    the 102 values of the frame
+     * @param timestamp the time at which it was captured, in microseconds
+     *                  since the epoch
+     * @param sequence  its sequence number in the stream it was received from
+     * @throws IOException
+     */
+    public void writeFrame(int[] pixels, long timestamp, long sequence) throws IOException {
+        int offset = 0;
+        if (timestamps) {
+            for (int i = 7; i >= 0; i--) {
+                record[offset++] = (byte) (timestamp >>> (i * 8));
+            }
+        }
+        if (sequences) {
+            for (int i = 7; i >= 0; i--) {
+                record[offset++] = (byte) (sequence >>> (i * 8));
+            }
+        }
+        for (int i = 0; i < Capture.FRAME_WIDTH; i++) {
+            int value = pixels[i];
+            record[offset++] = (byte) (value < 0 ? 0 : value > 255 ? 255 : value);
+        }
+        out.write(record);
+    }
+
+
+    /**
+     * writes the frames still buffered.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
@@ -0,0 +1,49 @@
+import java.io.Closeable;
+
+/**
+ * A recorded sequence of frames which can be read in any order. Each frame is
+ * made of the 102 grayscale values seen by the camera : LEFT, MIDDLE and RIGHT
+ * arrays of 34 pixels.
+ * <p/>
+ * Use {@link Captures#open(String)} to open a capture file, whatever its
+ * format. Closing a capture releases its file (and its mapping, if it is
+ * mapped in memory) : it must not be read anymore, by any thread.
+ */
+public interface Capture extends Closeable {
+
+    /**
+     * the number of pixels of a frame
+     */
+    int FRAME_WIDTH = 102;
+
+
+    /**
+     * @return the number of frames in the capture
+     */
+    int getNbrOfFrames();
+
+
+    /**
+     * reads the values of a frame.
+     *
+     * @param frameNbr the frame to read, starting at 0
+     * @param pixels   the array receiving the 102 values of the frame
+     */
+    void readFrame(int frameNbr, int[] pixels);
+
+
+    /**
+     * @return true if the frames of this capture carry the time at which they
+     * were captured
+     */
+    boolean hasTimestamps();
+
+
+    /**
+     * @param frameNbr the frame, starting at 0
+     * @return the time at which the frame was captured, in microseconds since
+     * the epoch, or -1 if the capture has no timestamps
+     */
+    long getTimestamp(int frameNbr);
+
+}
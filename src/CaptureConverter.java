@@ -0,0 +1,118 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Converts a capture into the binary format (see {@link BinaryCapture}), or
+ * into a compressed archive (see {@link ArchiveCapture}) when the output ends
+ * with {@value ArchiveCapture#EXTENSION}. The conversion is streamed : the
+ * input is read once, sequentially, and never loaded in memory.
+ * <p/>
+ * Usage : <code>java CaptureConverter input output.kjc</code> or
+ * <code>java CaptureConverter input output.kjz</code>
+ */
+public class CaptureConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage : java CaptureConverter <capture> <binary capture (.kjc) | archive (.kjz)>");
+            System.exit(1);
+        }
+
+        long start = System.currentTimeMillis();
+        int frames = convert(args[0], args[1]);
+        System.out.println(frames + " frames converted in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+
+    /**
+     * converts a capture. The timestamps are kept, if the input has some.
+     *
+     * @param inputFilepath  the capture to read, in any format
+     * @param outputFilepath the capture to create : an archive if it ends with
+     *                       {@value ArchiveCapture#EXTENSION}, a binary
+     *                       capture otherwise
+     * @return the number of frames converted
+     * @throws IOException
+     */
+    public static int convert(String inputFilepath, String outputFilepath) throws IOException {
+        if (Captures.isText(inputFilepath))
+            return convertText(inputFilepath, outputFilepath);
+
+        Capture capture = Captures.open(inputFilepath);
+        try {
+            CaptureWriter writer = createWriter(outputFilepath, capture.hasTimestamps());
+            int[] pixels = new int[Capture.FRAME_WIDTH];
+            try {
+                for (int i = 0; i < capture.getNbrOfFrames(); i++) {
+                    capture.readFrame(i, pixels);
+                    writer.writeFrame(pixels, capture.getTimestamp(i));
+                }
+            } finally {
+                writer.close();
+            }
+            return capture.getNbrOfFrames();
+        } finally {
+            capture.close();
+        }
+    }
+
+
+    private static CaptureWriter createWriter(String filepath, boolean timestamps) throws IOException {
+        if (filepath.endsWith(ArchiveCapture.EXTENSION))
+            return new ArchiveWriter(filepath, timestamps);
+        return new BinaryCaptureWriter(filepath, timestamps);
+    }
+
+
+    /**
+     * converts a text capture. It has timestamps if its first line has one.
+     */
+    private static int convertText(String textFilepath, String outputFilepath) throws IOException {
+        InputStream in = new FileInputStream(textFilepath);
+        int[] pixels = new int[Capture.FRAME_WIDTH];
+        int frames = 0;
+
+        PixelParser parser = new PixelParser(pixels);
+        byte[] buffer = new byte[1 << 16];
+        CaptureWriter writer = null;
+
+        try {
+            int read = in.read(buffer);
+            writer = createWriter(outputFilepath, startsWithTimestamp(buffer, Math.max(0, read)));
+            for (; read != -1; read = in.read(buffer)) {
+                int position = 0;
+                while ((position = parser.parse(buffer, position, read)) >= 0) {
+                    writer.writeFrame(pixels, parser.getTimestamp());
+                    frames++;
+                }
+            }
+            // a last line without a terminating new line
+            if (parser.endOfInput()) {
+                writer.writeFrame(pixels, parser.getTimestamp());
+                frames++;
+            }
+            if (parser.getMalformedCount() > 0) {
+                System.err.println(parser.getMalformedCount() + " malformed values ignored");
+            }
+        } finally {
+            in.close();
+            if (writer != null)
+                writer.close();
+        }
+        return frames;
+    }
+
+
+    /**
+     * @return true if the first line of the bytes has a timestamp
+     */
+    private static boolean startsWithTimestamp(byte[] buffer, int length) {
+        PixelParser parser = new PixelParser(new int[Capture.FRAME_WIDTH]);
+        if (parser.parse(buffer, 0, length) < 0)
+            parser.endOfInput();
+        return parser.getTimestamp() >= 0;
+    }
+
+}
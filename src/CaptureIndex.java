@@ -0,0 +1,317 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Byte offsets of the lines of a capture file. With it, any frame can be read
+ * directly, instead of reading and throwing away every line before it.
+ * <p/>
+ * The index is built once by scanning the file, then saved next to the
+ * capture in a sidecar file (the capture path followed by ".idx"). The
+ * sidecar remembers the length and the modification date of the capture it
+ * was built from : when they do not match anymore, it is considered stale and
+ * the index is built again.
+ * <p/>
+ * Lines are counted the same way {@link java.io.BufferedReader#readLine()}
+ * does : a last line without a terminating new line still counts.
+ * <p/>
+ * The index may also be built in the background (see
+ * {@link #openInBackground(MappedFile)}) : the lines found so far can be read
+ * while the rest of the file is scanned, the number of lines growing as the
+ * scan proceeds.
+ */
+public class CaptureIndex {
+
+    public static final String SIDECAR_EXTENSION = ".idx";
+
+    private static final int MAGIC = 0x4B4A4958; // "KJIX"
+    private static final int VERSION = 1;
+    private static final int PUBLISH_INTERVAL = 1 << 12; // lines
+
+    // offsets[i] is the position of the first byte of line i, offsets[count]
+    // the position right after the last line. While the index is built,
+    // count is published after the offsets it covers, so a reader reading
+    // count first, then offsets, sees all the offsets it needs.
+    private volatile long[] offsets;
+    private volatile int count;
+    private volatile long scanned; // the number of bytes scanned so far
+    private volatile boolean complete;
+    private volatile boolean stopped = false;
+    private Thread indexer; // the thread building the index in the background, if any
+    private final long length; // of the capture
+
+
+    private CaptureIndex(long[] offsets, int count, long length, boolean complete) {
+        this.offsets = offsets;
+        this.count = count;
+        this.length = length;
+        this.scanned = complete ? length : 0;
+        this.complete = complete;
+    }
+
+
+    /**
+     * gets the index of the given capture file : loads it from its sidecar
+     * file if it is up to date, otherwise scans the capture and (tries to)
+     * save the result in the sidecar for the next time.
+     *
+     * @param file the capture file, mapped in memory
+     * @return the index
+     */
+    public static CaptureIndex open(MappedFile file) {
+        File capture = new File(file.getFilepath());
+        File sidecar = new File(file.getFilepath() + SIDECAR_EXTENSION);
+
+        CaptureIndex index = load(sidecar, capture);
+        if (index != null)
+            return index;
+
+        index = build(file);
+        index.trySave(sidecar, capture);
+        return index;
+    }
+
+
+    /**
+     * gets the index of the given capture file, without waiting : loads it
+     * from its sidecar file if it is up to date, otherwise starts scanning
+     * the capture in the background, and returns an index holding the lines
+     * found so far. The sidecar is saved once the scan is complete.
+     *
+     * @param file the capture file, mapped in memory
+     * @return the index, complete or being built
+     */
+    public static CaptureIndex openInBackground(final MappedFile file) {
+        final File capture = new File(file.getFilepath());
+        final File sidecar = new File(file.getFilepath() + SIDECAR_EXTENSION);
+
+        CaptureIndex index = load(sidecar, capture);
+        if (index != null)
+            return index;
+
+        final CaptureIndex building = new CaptureIndex(new long[1024], 0, file.length(), false);
+        Thread indexer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                building.scan(file);
+                if (!building.stopped)
+                    building.trySave(sidecar, capture);
+            }
+        }, "capture indexer");
+        indexer.setDaemon(true);
+        building.indexer = indexer;
+        indexer.start();
+        return building;
+    }
+
+
+    /**
+     * stops building the index in the background, if it is, and waits for the
+     * scan to end : the file can then be closed. The index stays incomplete.
+     */
+    public void stop() {
+        stopped = true;
+        if (indexer == null || indexer == Thread.currentThread())
+            return;
+        boolean interrupted = false;
+        while (indexer.isAlive()) {
+            try {
+                indexer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+
+    /**
+     * scans the whole file, in one sequential pass, and records where each
+     * line starts.
+     *
+     * @param file the capture file, mapped in memory
+     * @return the index of the lines
+     */
+    public static CaptureIndex build(MappedFile file) {
+        CaptureIndex index = new CaptureIndex(new long[1024], 0, file.length(), false);
+        index.scan(file);
+        return index;
+    }
+
+
+    /**
+     * fills this index, publishing the lines found every
+     * {@value #PUBLISH_INTERVAL} lines.
+     */
+    private void scan(MappedFile file) {
+        long[] offsets = this.offsets;
+        int count = 0;
+        boolean lineStarted = false;
+
+        offsets[0] = 0;
+        for (int r = 0; r < file.getNbrOfRegions(); r++) {
+            MappedByteBuffer region = file.getRegion(r);
+            long regionStart = (long) r << MappedFile.REGION_SHIFT;
+            int limit = region.limit();
+            for (int i = 0; i < limit; i++) {
+                if (region.get(i) == '\n') {
+                    if (++count == offsets.length) {
+                        offsets = grow(offsets);
+                        this.offsets = offsets;
+                    }
+                    offsets[count] = regionStart + i + 1;
+                    lineStarted = false;
+                    if (count % PUBLISH_INTERVAL == 0) {
+                        this.count = count;
+                        this.scanned = regionStart + i + 1;
+                        if (stopped)
+                            return;
+                    }
+                } else {
+                    lineStarted = true;
+                }
+            }
+        }
+
+        // a last line without a terminating '\n'
+        if (lineStarted) {
+            if (++count == offsets.length) {
+                offsets = grow(offsets);
+                this.offsets = offsets;
+            }
+            offsets[count] = file.length();
+        }
+
+        this.count = count;
+        this.scanned = length;
+        this.complete = true;
+    }
+
+
+    private static long[] grow(long[] offsets) {
+        long[] bigger = new long[offsets.length * 2];
+        System.arraycopy(offsets, 0, bigger, 0, offsets.length);
+        return bigger;
+    }
+
+
+    /**
+     * reads an index from a sidecar file.
+     *
+     * @return the index, or null if the sidecar does not exist, is unreadable
+     * or does not match the capture anymore
+     */
+    private static CaptureIndex load(File sidecar, File capture) {
+        if (!sidecar.isFile())
+            return null;
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(sidecar), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                    return null;
+                if (in.readLong() != capture.length()
+                        || in.readLong() != capture.lastModified())
+                    return null; // stale
+                int count = in.readInt();
+                long[] offsets = new long[count + 1];
+                for (int i = 0; i <= count; i++)
+                    offsets[i] = in.readLong();
+                return new CaptureIndex(offsets, count, capture.length(), true);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // corrupted or truncated sidecar : it will be rebuilt
+            return null;
+        }
+    }
+
+
+    private void trySave(File sidecar, File capture) {
+        try {
+            save(sidecar, capture);
+        } catch (IOException e) {
+            // not a big issue, the index will simply be built again next time
+            System.err.println("could not write the index file " + sidecar + " : " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * writes this index to a sidecar file, along with the length and the
+     * modification date of the capture, used to detect stale indexes.
+     *
+     * @throws IOException
+     */
+    private void save(File sidecar, File capture) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(sidecar), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(capture.length());
+            out.writeLong(capture.lastModified());
+            int count = this.count;
+            long[] offsets = this.offsets;
+            out.writeInt(count);
+            for (int i = 0; i <= count; i++)
+                out.writeLong(offsets[i]);
+        } finally {
+            out.close();
+        }
+    }
+
+
+    /**
+     * @return the number of lines (i.e. frames) in the capture, or found so
+     * far if the index is being built
+     */
+    public int getNbrOfLines() {
+        return count;
+    }
+
+
+    /**
+     * @return true once the whole capture has been scanned
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+
+    /**
+     * @return the part of the capture scanned so far, between 0 and 1
+     */
+    public double getProgress() {
+        return length == 0 ? 1 : (double) scanned / length;
+    }
+
+
+    /**
+     * @param line the line number, starting at 0
+     * @return the position of the first byte of the line
+     */
+    public long getStart(int line) {
+        return offsets[line];
+    }
+
+
+    /**
+     * @param line the line number, starting at 0
+     * @return the number of bytes of the line, including its line terminator
+     */
+    public int getLength(int line) {
+        long[] offsets = this.offsets;
+        return (int) (offsets[line + 1] - offsets[line]);
+    }
+
+}
@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes statistics over capture files, without any user interface : for
+ * each pixel, and for each of the LEFT, MIDDLE and RIGHT segments, the
+ * minimum, maximum, mean and variance of the values, and their histogram.
+ * <p/>
+ * The files are scanned in parallel chunks (see {@link ParallelScan}), so the
+ * throughput grows with the number of cores. Everything is derived from one
+ * histogram per pixel, which is all a chunk has to fill.
+ * <p/>
+ * Usage : <code>java CaptureStatistics [--json] [--histograms] [--threads n]
+ * file...</code>
+ * <p/>
+ * The CSV output has one row per pixel and per segment, for each file. The
+ * histograms, when asked for, are appended as 256 more columns.
+ */
+public class CaptureStatistics {
+
+    private static final String[] SEGMENT_NAMES = {"LEFT", "MIDDLE", "RIGHT"};
+    private static final int SEGMENT_WIDTH = Capture.FRAME_WIDTH / 3;
+
+    /**
+     * the values counted by a histogram, summarised
+     */
+    private static class Summary {
+        long count = 0;
+        int min = -1, max = -1; // -1 when there is no value
+        double mean, variance; // NaN when there is no value
+
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+    }
+
+
+    private long nbrOfFrames = 0;
+    // histograms[pixel * 256 + value] : number of frames where the pixel has
+    // this value
+    private final long[] histograms = new long[Capture.FRAME_WIDTH * 256];
+
+
+    /**
+     * fills the histograms of the statistics
+     */
+    public static final ParallelScan.Processor<CaptureStatistics> PROCESSOR =
+            new ParallelScan.Processor<CaptureStatistics>() {
+
+                @Override
+                public CaptureStatistics newResult() {
+                    return new CaptureStatistics();
+                }
+
+
+                @Override
+                public void process(CaptureStatistics result, int frameNbr, int[] pixels) {
+                    result.add(pixels);
+                }
+
+
+                @Override
+                public void merge(CaptureStatistics result, CaptureStatistics other) {
+                    result.merge(other);
+                }
+            };
+
+
+    public static void main(String[] args) throws IOException {
+        boolean json = false, withHistograms = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+
+        for (; first < args.length && args[first].startsWith("--"); first++) {
+            if (args[first].equals("--json")) {
+                json = true;
+            } else if (args[first].equals("--histograms")) {
+                withHistograms = true;
+            } else if (args[first].equals("--threads") && first + 1 < args.length) {
+                threads = Integer.parseInt(args[++first]);
+            } else {
+                first = args.length; // prints the usage
+            }
+        }
+        if (first >= args.length) {
+            System.err.println("usage : java CaptureStatistics [--json] [--histograms] [--threads n] file...");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        PrintStream out = System.out;
+
+        if (json) {
+            out.println("[");
+        } else {
+            printCsvHeader(out, withHistograms);
+        }
+        for (int i = first; i < args.length; i++) {
+            long start = System.nanoTime();
+            CaptureStatistics statistics = ParallelScan.scan(args[i], PROCESSOR, pool);
+            System.err.println(args[i] + " : " + statistics.nbrOfFrames + " frames in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+
+            if (json) {
+                statistics.printJson(out, args[i], withHistograms);
+                out.println(i < args.length - 1 ? "," : "");
+            } else {
+                statistics.printCsv(out, args[i], withHistograms);
+            }
+        }
+        if (json) {
+            out.println("]");
+        }
+        pool.shutdown();
+    }
+
+
+    /**
+     * adds a frame to the statistics.
+     *
+     * @param pixels the 102 values of the frame, between 0 and 255
+     */
+    public void add(int[] pixels) {
+        for (int i = 0; i < Capture.FRAME_WIDTH; i++)
+            histograms[(i << 8) + pixels[i]]++;
+        nbrOfFrames++;
+    }
+
+
+    /**
+     * adds the frames counted by other statistics to these ones.
+     *
+     * @param other the statistics to merge
+     */
+    public void merge(CaptureStatistics other) {
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] += other.histograms[i];
+        nbrOfFrames += other.nbrOfFrames;
+    }
+
+
+    /**
+     * @return the number of frames counted
+     */
+    public long getNbrOfFrames() {
+        return nbrOfFrames;
+    }
+
+
+    /**
+     * @param from the first pixel
+     * @param to   the pixel after the last one
+     * @return the histogram of the values of these pixels
+     */
+    public long[] getHistogram(int from, int to) {
+        long[] histogram = new long[256];
+        for (int i = from; i < to; i++) {
+            for (int v = 0; v < 256; v++)
+                histogram[v] += histograms[(i << 8) + v];
+        }
+        return histogram;
+    }
+
+
+    private static void printCsvHeader(PrintStream out, boolean withHistograms) {
+        out.print("file,pixel,count,min,max,mean,variance");
+        if (withHistograms) {
+            for (int v = 0; v < 256; v++)
+                out.print(",h" + v);
+        }
+        out.println();
+    }
+
+
+    private void printCsv(PrintStream out, String filepath, boolean withHistograms) {
+        for (int i = 0; i < Capture.FRAME_WIDTH; i++)
+            printCsvRow(out, filepath, Integer.toString(i), getHistogram(i, i + 1), withHistograms);
+        for (int s = 0; s < SEGMENT_NAMES.length; s++)
+            printCsvRow(out, filepath, SEGMENT_NAMES[s],
+                    getHistogram(s * SEGMENT_WIDTH, (s + 1) * SEGMENT_WIDTH), withHistograms);
+    }
+
+
+    private static void printCsvRow(PrintStream out, String filepath, String name,
+                                    long[] histogram, boolean withHistograms) {
+        Summary summary = summarize(histogram);
+        out.print('"' + filepath.replace("\"", "\"\"") + "\"," + name + "," + summary.count + ",");
+        // the cells are empty when there is no value
+        if (!summary.isEmpty()) {
+            out.print(String.format(Locale.ROOT, "%d,%d,%.4f,%.4f", summary.min, summary.max, summary.mean,
+                    summary.variance));
+        } else {
+            out.print(",,,");
+        }
+        if (withHistograms) {
+            for (long count : histogram)
+                out.print("," + count);
+        }
+        out.println();
+    }
+
+
+    private void printJson(PrintStream out, String filepath, boolean withHistograms) {
+        out.println("  {");
+        out.println("    \"file\": \"" + filepath.replace("\\", "\\\\").replace("\"", "\\\"") + "\",");
+        out.println("    \"frames\": " + nbrOfFrames + ",");
+        out.println("    \"pixels\": [");
+        for (int i = 0; i < Capture.FRAME_WIDTH; i++) {
+            out.print("      ");
+            printJsonObject(out, getHistogram(i, i + 1), withHistograms);
+            out.println(i < Capture.FRAME_WIDTH - 1 ? "," : "");
+        }
+        out.println("    ],");
+        out.println("    \"segments\": {");
+        for (int s = 0; s < SEGMENT_NAMES.length; s++) {
+            out.print("      \"" + SEGMENT_NAMES[s] + "\": ");
+            printJsonObject(out, getHistogram(s * SEGMENT_WIDTH, (s + 1) * SEGMENT_WIDTH),
+                    withHistograms);
+            out.println(s < SEGMENT_NAMES.length - 1 ? "," : "");
+        }
+        out.println("    }");
+        out.print("  }");
+    }
+
+
+    private static void printJsonObject(PrintStream out, long[] histogram, boolean withHistograms) {
+        Summary summary = summarize(histogram);
+        out.print("{\"count\": " + summary.count);
+        // null when there is no value
+        if (!summary.isEmpty()) {
+            out.print(String.format(Locale.ROOT, ", \"min\": %d, \"max\": %d, \"mean\": %.4f,"
+                    + " \"variance\": %.4f", summary.min, summary.max, summary.mean, summary.variance));
+        } else {
+            out.print(", \"min\": null, \"max\": null, \"mean\": null, \"variance\": null");
+        }
+        if (withHistograms) {
+            out.print(", \"histogram\": [");
+            for (int v = 0; v < histogram.length; v++)
+                out.print((v > 0 ? ", " : "") + histogram[v]);
+            out.print("]");
+        }
+        out.print("}");
+    }
+
+
+    /**
+     * @return the count, min, max, mean and variance of the values counted by
+     * the histogram
+     */
+    private static Summary summarize(long[] histogram) {
+        Summary summary = new Summary();
+        long sum = 0;
+        double sumOfSquares = 0;
+        for (int v = 0; v < histogram.length; v++) {
+            if (histogram[v] == 0)
+                continue;
+            if (summary.min < 0)
+                summary.min = v;
+            summary.max = v;
+            summary.count += histogram[v];
+            sum += histogram[v] * v;
+            sumOfSquares += (double) histogram[v] * v * v;
+        }
+        if (summary.isEmpty()) {
+            summary.mean = summary.variance = Double.NaN;
+            return summary;
+        }
+
+        summary.mean = (double) sum / summary.count;
+        summary.variance = Math.max(0, sumOfSquares / summary.count - summary.mean * summary.mean);
+        return summary;
+    }
+
+}
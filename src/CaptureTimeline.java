@@ -0,0 +1,336 @@
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Several capture files played one after another, as one capture : the files
+ * of a directory, or the files matching a pattern such as
+ * <code>runs/kjunior-*.kjc</code>, sorted by name (so rotated files, see
+ * {@link FrameRecorder}, come in order). The files may have different
+ * formats.
+ * <p/>
+ * When the timeline is opened, the frames of every file are counted, the files
+ * being indexed in parallel. The files are then opened only when one of their
+ * frames is read, and the last {@value #MAX_OPENED} files read stay open : a
+ * file pushed out of them is closed as soon as no thread reads it anymore.
+ * The number of a frame in the timeline is mapped to a file and a frame in
+ * this file by a binary search.
+ */
+public class CaptureTimeline implements Capture {
+
+    private static final int MAX_OPENED = 8;
+
+    private final String[] filepaths;
+    private final int[] starts; // the first frame of each file, then the total
+    private final boolean timestamps; // true if every file has timestamps
+    private final Map<Integer, Opened> opened; // guarded by itself
+
+
+    /**
+     * an open file, and the threads reading it. Guarded by the map of the
+     * open files.
+     */
+    private static class Opened {
+        final Capture capture;
+        int readers = 0;
+        boolean evicted = false; // closed once no thread reads it anymore
+
+        Opened(Capture capture) {
+            this.capture = capture;
+        }
+    }
+
+
+    private CaptureTimeline(String[] filepaths, int[] starts, boolean timestamps) {
+        this.filepaths = filepaths;
+        this.starts = starts;
+        this.timestamps = timestamps;
+        this.opened = new LinkedHashMap<Integer, Opened>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Opened> eldest) {
+                if (size() <= MAX_OPENED)
+                    return false;
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+
+    /**
+     * @param path a path
+     * @return true if the path is a directory or a pattern, to be opened as a
+     * timeline rather than a single capture
+     */
+    public static boolean isTimeline(String path) {
+        return new File(path).isDirectory() || isPattern(new File(path).getName());
+    }
+
+
+    private static boolean isPattern(String name) {
+        return name.indexOf('*') >= 0 || name.indexOf('?') >= 0
+                || name.indexOf('[') >= 0 || name.indexOf('{') >= 0;
+    }
+
+
+    /**
+     * finds the files of the timeline and counts their frames, in parallel.
+     *
+     * @param path a directory, whose files are all captures (except the index
+     *             files, see {@link CaptureIndex}), or a glob pattern matching
+     *             the names of the captures in a directory
+     * @return the timeline
+     * @throws IOException if no capture is found, or if a file cannot be read
+     */
+    public static CaptureTimeline open(String path) throws IOException {
+        final File directory;
+        final PathMatcher matcher;
+        if (new File(path).isDirectory()) {
+            directory = new File(path);
+            matcher = null;
+        } else {
+            File pattern = new File(path);
+            directory = pattern.getAbsoluteFile().getParentFile();
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.getName());
+        }
+
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && !file.getName().endsWith(CaptureIndex.SIDECAR_EXTENSION)
+                        && (matcher == null || matcher.matches(Paths.get(file.getName())));
+            }
+        });
+        if (files == null || files.length == 0)
+            throw new IOException("no capture found in " + path);
+        Arrays.sort(files);
+
+        // counts the frames of every file, in parallel
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(files.length, Runtime.getRuntime().availableProcessors()));
+        List<Future<Capture>> counts = new ArrayList<Future<Capture>>();
+        for (final File file : files) {
+            counts.add(executor.submit(new Callable<Capture>() {
+                @Override
+                public Capture call() throws IOException {
+                    Capture capture = Captures.open(file.getPath());
+                    capture.getNbrOfFrames();
+                    return capture;
+                }
+            }));
+        }
+
+        String[] filepaths = new String[files.length];
+        int[] starts = new int[files.length + 1];
+        boolean timestamps = true;
+        // the captures counted are closed : they are opened again when
+        // needed, which is fast now that they are indexed
+        int i = 0;
+        try {
+            for (; i < files.length; i++) {
+                Capture capture = counts.get(i).get();
+                try {
+                    filepaths[i] = files[i].getPath();
+                    long end = (long) starts[i] + capture.getNbrOfFrames();
+                    if (end > Integer.MAX_VALUE)
+                        throw new IOException("too many frames in " + path);
+                    starts[i + 1] = (int) end;
+                    timestamps &= capture.hasTimestamps();
+                } finally {
+                    capture.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while indexing " + path, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException("could not index " + path, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            // after a failure, the captures counted but not used
+            for (i++; i < counts.size(); i++) {
+                try {
+                    counts.get(i).get().close();
+                } catch (InterruptedException | ExecutionException | IOException e) {
+                    // not opened, or already failing
+                }
+            }
+        }
+        return new CaptureTimeline(filepaths, starts, timestamps);
+    }
+
+
+    @Override
+    public int getNbrOfFrames() {
+        return starts[filepaths.length];
+    }
+
+
+    @Override
+    public void readFrame(int frameNbr, int[] pixels) {
+        int file = getFileOf(frameNbr);
+        Opened capture = acquire(file);
+        try {
+            capture.capture.readFrame(frameNbr - starts[file], pixels);
+        } finally {
+            release(capture);
+        }
+    }
+
+
+    @Override
+    public boolean hasTimestamps() {
+        return timestamps;
+    }
+
+
+    @Override
+    public long getTimestamp(int frameNbr) {
+        int file = getFileOf(frameNbr);
+        Opened capture = acquire(file);
+        try {
+            return capture.capture.getTimestamp(frameNbr - starts[file]);
+        } finally {
+            release(capture);
+        }
+    }
+
+
+    /**
+     * closes the files open. The timeline must not be read anymore.
+     */
+    @Override
+    public void close() {
+        synchronized (opened) {
+            for (Opened capture : opened.values())
+                evict(capture);
+            opened.clear();
+        }
+    }
+
+
+    /**
+     * @return the number of files of the timeline
+     */
+    public int getNbrOfFiles() {
+        return filepaths.length;
+    }
+
+
+    /**
+     * @param file the number of a file, starting at 0
+     * @return the path of the file
+     */
+    public String getFilepath(int file) {
+        return filepaths[file];
+    }
+
+
+    /**
+     * @param file the number of a file, starting at 0
+     * @return the number, in the timeline, of the first frame of the file
+     */
+    public int getFirstFrame(int file) {
+        return starts[file];
+    }
+
+
+    /**
+     * @param frameNbr a frame of the timeline
+     * @return the number of the file holding it
+     */
+    public int getFileOf(int frameNbr) {
+        if (frameNbr < 0 || frameNbr >= getNbrOfFrames())
+            throw new IndexOutOfBoundsException("frame " + frameNbr + " out of " + getNbrOfFrames());
+        int i = Arrays.binarySearch(starts, frameNbr);
+        if (i < 0)
+            return -i - 2; // the file starting before the frame
+        // the first frame of a file, or of the empty files before it
+        while (starts[i + 1] == frameNbr)
+            i++;
+        return i;
+    }
+
+
+    /**
+     * @return the capture of the file, opened now if it is not open already,
+     * which must be released once read (see {@link #release(Opened)})
+     */
+    private Opened acquire(int file) {
+        synchronized (opened) {
+            Opened capture = opened.get(file);
+            if (capture != null) {
+                capture.readers++;
+                return capture;
+            }
+        }
+
+        // opened without holding the lock : the other files can be read
+        // meanwhile
+        Capture capture;
+        try {
+            capture = Captures.open(filepaths[file]);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot open " + filepaths[file], e);
+        }
+        synchronized (opened) {
+            Opened other = opened.get(file);
+            if (other != null) {
+                // opened by another thread in the meantime
+                closeQuietly(capture);
+                other.readers++;
+                return other;
+            }
+            Opened added = new Opened(capture);
+            added.readers++;
+            opened.put(file, added);
+            return added;
+        }
+    }
+
+
+    /**
+     * tells that a thread is done reading a capture : it is closed if it was
+     * evicted meanwhile, and this thread was the last one reading it.
+     */
+    private void release(Opened capture) {
+        synchronized (opened) {
+            if (--capture.readers == 0 && capture.evicted)
+                closeQuietly(capture.capture);
+        }
+    }
+
+
+    /**
+     * closes a capture evicted from the open files, now or once the threads
+     * reading it are done. Called with the lock of the open files held.
+     */
+    private static void evict(Opened capture) {
+        capture.evicted = true;
+        if (capture.readers == 0)
+            closeQuietly(capture.capture);
+    }
+
+
+    private static void closeQuietly(Capture capture) {
+        try {
+            capture.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
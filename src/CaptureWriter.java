@@ -0,0 +1,22 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes frames to a capture file, in one of the formats which can be read
+ * back with {@link Captures#open(String)}. {@link #close()} must be called
+ * once all the frames are written.
+ */
+public interface CaptureWriter extends Closeable {
+
+    /**
+     * writes a frame. Values outside of [0, 255] are clamped.
+     *
+     * @param pixels    the 102 values of the frame
+     * @param timestamp the time at which the frame was captured, in
+     *                  microseconds since the epoch (ignored if the capture
+     *                  has no timestamps)
+     * @throws IOException
+     */
+    void writeFrame(int[] pixels, long timestamp) throws IOException;
+
+}
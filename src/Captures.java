@@ -0,0 +1,94 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Opens capture files, whatever their format : the format is detected from the
+ * first bytes of the file. A directory, or a pattern matching several files,
+ * is opened as one timeline (see {@link CaptureTimeline}).
+ */
+public class Captures {
+
+    private Captures() {
+    }
+
+
+    /**
+     * opens a capture file.
+     *
+     * @param filepath the capture file : a text capture, a binary capture or
+     *                 an archive, or a directory or a pattern
+     * @return the capture
+     * @throws IOException
+     */
+    public static Capture open(String filepath) throws IOException {
+        return open(filepath, false);
+    }
+
+
+    /**
+     * opens a capture file.
+     *
+     * @param filepath     the capture file : a text capture, a binary capture
+     *                     or an archive, or a directory or a pattern
+     * @param inBackground if true, a text capture is indexed in the
+     *                     background (see {@link MappedCapture}) : it can be
+     *                     read right away, but its number of frames grows
+     *                     until it is indexed. The other formats open
+     *                     instantly anyway.
+     * @return the capture
+     * @throws IOException
+     */
+    public static Capture open(String filepath, boolean inBackground) throws IOException {
+        if (CaptureTimeline.isTimeline(filepath))
+            return CaptureTimeline.open(filepath);
+        byte[] magic = readMagic(filepath);
+        if (BinaryCapture.isMagic(magic))
+            return new BinaryCapture(filepath);
+        if (ArchiveCapture.isMagic(magic))
+            return new ArchiveCapture(filepath);
+        return new MappedCapture(filepath, inBackground);
+    }
+
+
+    /**
+     * @param filepath the capture file
+     * @return true if the file starts with the header of the binary format
+     * @throws IOException
+     */
+    public static boolean isBinary(String filepath) throws IOException {
+        return BinaryCapture.isMagic(readMagic(filepath));
+    }
+
+
+    /**
+     * @param filepath the capture file
+     * @return true if the file is a text capture, neither binary nor an
+     * archive nor a timeline
+     * @throws IOException
+     */
+    public static boolean isText(String filepath) throws IOException {
+        if (CaptureTimeline.isTimeline(filepath))
+            return false;
+        byte[] magic = readMagic(filepath);
+        return !BinaryCapture.isMagic(magic) && !ArchiveCapture.isMagic(magic);
+    }
+
+
+    /**
+     * @return the first 4 bytes of the file, or less if it is shorter
+     */
+    private static byte[] readMagic(String filepath) throws IOException {
+        InputStream in = new FileInputStream(filepath);
+        try {
+            byte[] magic = new byte[4];
+            int read = 0, n;
+            while (read < magic.length && (n = in.read(magic, read, magic.length - read)) > 0)
+                read += n;
+            return read == magic.length ? magic : new byte[0];
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Clamps the values of the pixels to a range, and optionally stretches the
+ * range to the whole scale of grays, from 0 to 255, to raise the contrast of
+ * a dim image.
+ * <p/>
+ * The result of each value is computed once, when the filter is created :
+ * filtering a frame is one lookup per pixel.
+ */
+public class ContrastFilter implements FrameFilter {
+
+    private final int[] table = new int[256];
+
+
+    /**
+     * @param low     the lowest value kept
+     * @param high    the highest value kept
+     * @param stretch if true, low becomes 0 and high becomes 255
+     */
+    public ContrastFilter(int low, int high, boolean stretch) {
+        if (low < 0 || high > 255 || low >= high)
+            throw new IllegalArgumentException("invalid range : " + low + "-" + high);
+        for (int v = 0; v < table.length; v++) {
+            int clamped = Math.max(low, Math.min(high, v));
+            table[v] = stretch ? (clamped - low) * 255 / (high - low) : clamped;
+        }
+    }
+
+
+    @Override
+    public void filter(int[] pixels) {
+        int[] t = table;
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = t[pixels[i] & 0xFF];
+    }
+
+
+    @Override
+    public void reset() {
+    }
+
+}
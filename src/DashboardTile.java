@@ -0,0 +1,79 @@
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * One camera stream of the {@link RobotLiveDashboard} : its name, its latest
+ * frame, the number of frames received and dropped, and the frames lost and
+ * the jitter of the stream (see {@link StreamTiming}), and the line detected
+ * in the frame (see {@link LineDetector}).
+ */
+public class DashboardTile extends JPanel {
+
+    private final String name;
+    // hands the frames decoded over to the painting thread
+    private final FrameExchange frames = new FrameExchange(this);
+    private final LineRenderer renderer = new LineRenderer();
+    private final StreamTiming timing = new StreamTiming();
+    private final TextRow info = new TextRow(120);
+    private volatile boolean connected = true;
+
+
+    /**
+     * @param name the name of the stream : the address of the robot, or the
+     *             path of the file
+     */
+    public DashboardTile(String name) {
+        this.name = name;
+        this.setPreferredSize(new Dimension(10 + 102 * 4 + 10, 80));
+    }
+
+
+    /**
+     * @return the frames of the stream, to be filled by the reading thread
+     */
+    public FrameExchange getFrames() {
+        return frames;
+    }
+
+
+    /**
+     * @return the timing of the stream, to be updated by the reading thread
+     */
+    public StreamTiming getTiming() {
+        return timing;
+    }
+
+
+    /**
+     * marks the stream as ended : its last frame stays displayed.
+     */
+    public void disconnected() {
+        connected = false;
+        repaint();
+    }
+
+
+    @Override
+    public void paint(Graphics g) {
+        int offsetX = 10, offsetY = 22;
+        int pixelWidth = Math.max(1, (getWidth() - 2 * offsetX) / 102);
+        int height = getHeight() - offsetY - 6;
+
+        g.setColor(Color.white);
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        Frame frame = frames.getFrontBuffer();
+        renderer.setPixels(frame.pixels);
+        renderer.drawPixels(g, offsetX, offsetY, pixelWidth, height);
+        renderer.drawLine(g, frame.line, offsetX, offsetY, pixelWidth, height);
+
+        g.setColor(connected ? Color.BLACK : Color.GRAY);
+        info.clear().append(name).append(connected ? "" : " (disconnected)")
+                .append("   frames : ").append(frames.getPublishedCount())
+                .append("   dropped : ").append(frames.getDroppedCount())
+                .append("   lost : ").append(timing.getLostCount())
+                .append("   jitter : ").append(Math.round(timing.getJitter())).append(" us")
+                .draw(g, offsetX, 15);
+    }
+
+}
@@ -0,0 +1,33 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads frames from a named pipe (see <code>mkfifo</code>). When the program
+ * writing into the pipe closes it, the pipe is opened again, and waits for
+ * the next writer : the viewer survives the restarts of the robot link.
+ */
+public class FifoFrameSource extends StreamFrameSource {
+
+    private final String filepath;
+
+
+    /**
+     * @param filepath the named pipe. It is opened when the first frame is
+     *                 read, which blocks until a program opens it for writing.
+     */
+    public FifoFrameSource(String filepath) {
+        super(null);
+        this.filepath = filepath;
+    }
+
+
+    @Override
+    protected InputStream endOfStream(InputStream ended) throws IOException {
+        if (ended != null)
+            ended.close();
+        decoder.reset();
+        return new FileInputStream(filepath); // waits for the next writer
+    }
+
+}
@@ -0,0 +1,171 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a file which keeps growing, like <code>tail -f</code> does : when the
+ * end of the file is reached, reading blocks until more data is appended.
+ * <p/>
+ * Waiting does not spin : the thread sleeps on a {@link WatchService}, which
+ * wakes it up as soon as the file changes. The watch service of some
+ * platforms is slow or only polls, so the file is also checked after a
+ * timeout which starts at 1 ms and doubles, up to 100 ms, as long as nothing
+ * happens.
+ * <p/>
+ * When the file is truncated, or replaced by another file (log rotation), it
+ * is read again from its beginning. The stream then reports the end of the
+ * previous file once : {@link #read(byte[], int, int)} returns -1, and the
+ * following calls return the content of the new file. This lets the caller
+ * forget a line which was only partially read.
+ */
+public class FileFollower extends InputStream {
+
+    private static final long MIN_WAIT_MICROS = 1000, MAX_WAIT_MICROS = 100000;
+
+    private final Path path;
+    private final WatchService watchService;
+    private FileChannel channel;
+    private Object fileKey; // identifies the file currently read
+    private long position = 0;
+    private long waitMicros = MIN_WAIT_MICROS;
+
+
+    /**
+     * opens the file, positioned at its beginning.
+     *
+     * @param filepath the file to follow
+     * @throws IOException if the file cannot be opened
+     */
+    public FileFollower(String filepath) throws IOException {
+        this.path = Paths.get(filepath).toAbsolutePath();
+        try {
+            open();
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(filepath);
+        }
+
+        this.watchService = FileSystems.getDefault().newWatchService();
+        path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+
+    private void open() throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileKey = getFileKey();
+        this.position = 0;
+    }
+
+
+    /**
+     * @return an object identifying the file at the followed path : its inode
+     * when the platform has one, its creation time otherwise
+     */
+    private Object getFileKey() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int read = read(b, 0, 1);
+        return read < 0 ? -1 : b[0] & 0xFF;
+    }
+
+
+    /**
+     * reads the bytes available, waiting for new ones if the end of the file
+     * is reached.
+     *
+     * @return the number of bytes read, or -1 once when the file was
+     * truncated or replaced
+     * @throws InterruptedIOException if the thread is interrupted while
+     *                                waiting
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (true) {
+            int read = channel.read(buffer, position);
+            if (read > 0) {
+                position += read;
+                waitMicros = MIN_WAIT_MICROS;
+                return read;
+            }
+
+            if (hasRestarted()) {
+                channel.close();
+                open();
+                return -1;
+            }
+            waitForChange();
+        }
+    }
+
+
+    /**
+     * @return true if the file was truncated or replaced since it was opened
+     */
+    private boolean hasRestarted() throws IOException {
+        try {
+            return !getFileKey().equals(fileKey) || Files.size(path) < position;
+        } catch (NoSuchFileException e) {
+            return false; // being rotated : waits for the new file
+        }
+    }
+
+
+    /**
+     * sleeps until the directory of the file changes, or until the current
+     * timeout expires. The timeout doubles every time nothing happens.
+     */
+    private void waitForChange() throws IOException {
+        try {
+            WatchKey key = watchService.poll(waitMicros, TimeUnit.MICROSECONDS);
+            if (key == null) {
+                waitMicros = Math.min(waitMicros * 2, MAX_WAIT_MICROS);
+                return;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (path.getFileName().equals(event.context())) {
+                    waitMicros = MIN_WAIT_MICROS;
+                }
+            }
+            key.reset();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while following " + path);
+        } catch (ClosedWatchServiceException e) {
+            throw new IOException("stream closed");
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        channel.close();
+    }
+
+}
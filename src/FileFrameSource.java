@@ -0,0 +1,28 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads frames from a file which is being written, following it like
+ * <code>tail -f</code> (see {@link FileFollower}). When the file is truncated
+ * or replaced, it is read again from its beginning, as a new stream.
+ */
+public class FileFrameSource extends StreamFrameSource {
+
+    /**
+     * @param filepath the file to follow
+     * @throws IOException if it cannot be opened
+     */
+    public FileFrameSource(String filepath) throws IOException {
+        super(new FileFollower(filepath));
+    }
+
+
+    @Override
+    protected InputStream endOfStream(InputStream ended) {
+        // the file was truncated or replaced : the follower now reads the new
+        // content, whose format may differ
+        decoder.reset();
+        return ended;
+    }
+
+}
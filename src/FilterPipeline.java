@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Filters the frames of a live stream between their parsing and their
+ * painting : a sequence of stages (see {@link FrameFilter}), each of them
+ * changing the values in place, on the thread reading the stream. Nothing is
+ * allocated, nor queued : a frame is painted as soon as it is filtered.
+ * <p/>
+ * The time spent in each stage is measured (see {@link #getCost(int)}), so
+ * that the cost of a filter can be weighed against what it brings.
+ * <p/>
+ * A pipeline can be described as a list of stages separated by commas, for
+ * instance <code>median:5,ema:0.25,stretch:20-200</code> :
+ * <ul>
+ * <li><code>ema:alpha</code> : an exponential moving average (see
+ * {@link AverageFilter})</li>
+ * <li><code>median:k</code> : the median of the last k frames (see
+ * {@link MedianFilter})</li>
+ * <li><code>clamp:low-high</code> and <code>stretch:low-high</code> : clamps
+ * the values to a range, and stretches it to the whole scale of grays (see
+ * {@link ContrastFilter})</li>
+ * <li><code>flat:file</code> : the flat-field correction of a calibration
+ * file (see {@link FlatField})</li>
+ * </ul>
+ * The live viewers read it from the {@value #PROPERTY} system property.
+ */
+public class FilterPipeline {
+
+    /**
+     * the system property describing the pipeline of the live viewers
+     */
+    public static final String PROPERTY = "kjunior.filters";
+
+    private final String[] names;
+    private final FrameFilter[] stages;
+    private final LatencyHistogram[] costs;
+    private volatile boolean enabled = true;
+    private boolean bypassed = false; // reading thread only
+
+
+    /**
+     * @param names  the names of the stages, for the metrics
+     * @param stages the stages, in the order the frames go through them
+     */
+    public FilterPipeline(String[] names, FrameFilter[] stages) {
+        this.names = names.clone();
+        this.stages = stages.clone();
+        this.costs = new LatencyHistogram[stages.length];
+        for (int i = 0; i < costs.length; i++)
+            costs[i] = new LatencyHistogram();
+    }
+
+
+    /**
+     * @return the pipeline described by the {@value #PROPERTY} system
+     * property, empty if it is not set
+     * @throws IllegalArgumentException if the description is malformed
+     */
+    public static FilterPipeline fromSystemProperty() {
+        return parse(System.getProperty(PROPERTY, ""));
+    }
+
+
+    /**
+     * reads the description of a pipeline (see the description of the class).
+     *
+     * @param description the stages, separated by commas
+     * @return the pipeline
+     * @throws IllegalArgumentException if the description is malformed
+     */
+    public static FilterPipeline parse(String description) {
+        List<String> names = new ArrayList<String>();
+        List<FrameFilter> stages = new ArrayList<FrameFilter>();
+        for (String stage : description.split(",")) {
+            stage = stage.trim();
+            if (stage.isEmpty())
+                continue;
+            int colon = stage.indexOf(':');
+            String kind = (colon < 0 ? stage : stage.substring(0, colon)).toLowerCase(Locale.ROOT);
+            String parameter = colon < 0 ? "" : stage.substring(colon + 1);
+            try {
+                if (kind.equals("ema")) {
+                    stages.add(new AverageFilter(Double.parseDouble(parameter)));
+                } else if (kind.equals("median")) {
+                    stages.add(new MedianFilter(Integer.parseInt(parameter)));
+                } else if (kind.equals("clamp") || kind.equals("stretch")) {
+                    int dash = parameter.indexOf('-');
+                    stages.add(new ContrastFilter(Integer.parseInt(parameter.substring(0, dash)),
+                            Integer.parseInt(parameter.substring(dash + 1)), kind.equals("stretch")));
+                } else if (kind.equals("flat")) {
+                    stages.add(FlatField.load(parameter));
+                } else {
+                    throw new IllegalArgumentException("unknown filter : " + stage
+                            + " (expected ema:alpha, median:k, clamp:low-high, stretch:low-high or flat:file)");
+                }
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("invalid parameter of the filter : " + stage);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("cannot read the calibration of the filter : " + stage
+                        + " (" + e.getMessage() + ")");
+            }
+            names.add(stage);
+        }
+        return new FilterPipeline(names.toArray(new String[names.size()]),
+                stages.toArray(new FrameFilter[stages.size()]));
+    }
+
+
+    /**
+     * filters a frame, in place, through every stage, unless the pipeline is
+     * disabled. Reading thread only.
+     *
+     * @param pixels the 102 values of the frame
+     */
+    public void filter(int[] pixels) {
+        if (!enabled) {
+            bypassed = true;
+            return;
+        }
+        if (bypassed) {
+            // the frames in between were not filtered : starts again
+            reset();
+            bypassed = false;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].filter(pixels);
+            long end = System.nanoTime();
+            costs[i].record(end - start);
+            start = end;
+        }
+    }
+
+
+    /**
+     * forgets the frames filtered so far. Reading thread only.
+     */
+    public void reset() {
+        for (FrameFilter stage : stages)
+            stage.reset();
+    }
+
+
+    /**
+     * @param enabled false to let the frames through unchanged. Any thread.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+
+    /**
+     * @return true if the frames are filtered
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * @return the number of stages
+     */
+    public int getNbrOfStages() {
+        return stages.length;
+    }
+
+
+    /**
+     * @param stage the number of the stage, starting at 0
+     * @return its name, as given in the description of the pipeline
+     */
+    public String getName(int stage) {
+        return names[stage];
+    }
+
+
+    /**
+     * @param stage the number of the stage, starting at 0
+     * @return the time spent in this stage, per frame
+     */
+    public LatencyHistogram getCost(int stage) {
+        return costs[stage];
+    }
+
+}
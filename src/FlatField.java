@@ -0,0 +1,255 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Corrects the differences of gain and offset between the pixels of the
+ * camera, which are the most visible between the LEFT, MIDDLE and RIGHT
+ * arrays : the flat-field correction.
+ * <p/>
+ * The correction is derived from two reference captures : a dark one (the
+ * lens covered), giving the offset of each pixel, and a flat one (a uniform,
+ * light surface), giving its response. Each value becomes
+ * <code>(value - dark) * mean(flat - dark) / (flat - dark)</code>, so that a
+ * uniform surface gives the same value on every pixel. Without a dark
+ * capture, only the gains are corrected.
+ * <p/>
+ * The corrected value of every value of every pixel is computed once, into a
+ * table of 102 x 256 bytes : correcting a frame is one lookup per pixel.
+ * <p/>
+ * File format : the magic number "KJFF", the version of the format (2
+ * bytes), the number of pixels of a frame (2 bytes, always 102), then the
+ * table, pixel after pixel, 256 unsigned bytes each.
+ * <p/>
+ * Usage, to compute a calibration :
+ * <code>java FlatField [--dark dark-capture] flat-capture output.kjf</code>.
+ * The viewers then apply the calibration given by the {@value #PROPERTY}
+ * system property.
+ */
+public class FlatField implements FrameFilter {
+
+    /**
+     * the system property holding the path of the calibration the viewers
+     * apply
+     */
+    public static final String PROPERTY = "kjunior.calibration";
+
+    /**
+     * the extension of the calibration files
+     */
+    public static final String EXTENSION = ".kjf";
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'K', 'J', 'F', 'F'};
+    private static final int WIDTH = Capture.FRAME_WIDTH;
+    // below this difference between the flat and the dark values, a pixel is
+    // dead, and left uncorrected
+    private static final double MIN_RESPONSE = 4;
+
+    private final byte[] table; // table[pixel << 8 | value]
+
+
+    public static void main(String[] args) throws IOException {
+        String dark = null;
+        int first = 0;
+        if (args.length > 1 && args[0].equals("--dark")) {
+            dark = args[1];
+            first = 2;
+        }
+        if (args.length - first != 2) {
+            System.err.println("usage : java FlatField [--dark <dark capture>] <flat capture> <output"
+                    + EXTENSION + ">");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        double[] darkMeans = dark == null ? new double[WIDTH] : getMeans(dark, pool);
+        double[] flatMeans = getMeans(args[first], pool);
+        pool.shutdown();
+
+        FlatField calibration = new FlatField(darkMeans, flatMeans);
+        calibration.save(args[first + 1]);
+
+        // the spread of the gains, per segment : how much was corrected
+        int segmentWidth = WIDTH / 3;
+        String[] segments = {"LEFT", "MIDDLE", "RIGHT"};
+        double target = getTarget(darkMeans, flatMeans);
+        for (int s = 0; s < segments.length; s++) {
+            double min = Double.MAX_VALUE, max = 0;
+            for (int i = s * segmentWidth; i < (s + 1) * segmentWidth; i++) {
+                double gain = target / Math.max(MIN_RESPONSE, flatMeans[i] - darkMeans[i]);
+                min = Math.min(min, gain);
+                max = Math.max(max, gain);
+            }
+            System.out.println(String.format(Locale.ROOT, "%-6s : gains from %.3f to %.3f", segments[s], min, max));
+        }
+    }
+
+
+    /**
+     * computes the correction.
+     *
+     * @param dark the mean value of each pixel when the lens is covered
+     * @param flat the mean value of each pixel facing a uniform surface
+     */
+    public FlatField(double[] dark, double[] flat) {
+        this.table = new byte[WIDTH << 8];
+        double target = getTarget(dark, flat);
+        for (int i = 0; i < WIDTH; i++) {
+            double response = flat[i] - dark[i];
+            double gain = response < MIN_RESPONSE ? 1 : target / response;
+            double offset = response < MIN_RESPONSE ? 0 : dark[i];
+            for (int v = 0; v < 256; v++) {
+                long corrected = Math.round((v - offset) * gain);
+                table[i << 8 | v] = (byte) Math.max(0, Math.min(255, corrected));
+            }
+        }
+    }
+
+
+    private FlatField(byte[] table) {
+        this.table = table;
+    }
+
+
+    /**
+     * @return the mean response of the pixels which are not dead : the value
+     * a uniform surface gets once corrected
+     */
+    private static double getTarget(double[] dark, double[] flat) {
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < WIDTH; i++) {
+            if (flat[i] - dark[i] >= MIN_RESPONSE) {
+                sum += flat[i] - dark[i];
+                count++;
+            }
+        }
+        return count == 0 ? 1 : sum / count;
+    }
+
+
+    /**
+     * computes the mean value of each pixel of a capture, using every core
+     * (see {@link ParallelScan}).
+     *
+     * @param filepath the capture, in any format
+     * @param pool     the threads to use
+     * @return the 102 means
+     * @throws IOException if the capture cannot be read, or is empty
+     */
+    public static double[] getMeans(String filepath, ForkJoinPool pool) throws IOException {
+        CaptureStatistics statistics = ParallelScan.scan(filepath, CaptureStatistics.PROCESSOR, pool);
+        if (statistics.getNbrOfFrames() == 0)
+            throw new IOException(filepath + " has no frames");
+
+        double[] means = new double[WIDTH];
+        for (int i = 0; i < WIDTH; i++) {
+            long[] histogram = statistics.getHistogram(i, i + 1);
+            double sum = 0;
+            for (int v = 0; v < histogram.length; v++)
+                sum += (double) v * histogram[v];
+            means[i] = sum / statistics.getNbrOfFrames();
+        }
+        return means;
+    }
+
+
+    /**
+     * reads a calibration file.
+     *
+     * @param filepath the file
+     * @return the calibration
+     * @throws IOException if the file is not a calibration, or if its version
+     *                     is not supported
+     */
+    public static FlatField load(String filepath) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filepath)));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i])
+                    throw new IOException(filepath + " is not a calibration");
+            }
+            int version = in.readUnsignedShort();
+            int width = in.readUnsignedShort();
+            if (version != VERSION)
+                throw new IOException("unsupported calibration version : " + version);
+            if (width != WIDTH)
+                throw new IOException("unsupported frame width : " + width);
+
+            byte[] table = new byte[WIDTH << 8];
+            in.readFully(table);
+            return new FlatField(table);
+        } finally {
+            in.close();
+        }
+    }
+
+
+    /**
+     * @return the calibration given by the {@value #PROPERTY} system property,
+     * or null if it is not set
+     * @throws IllegalArgumentException if the calibration cannot be read
+     */
+    public static FlatField fromSystemProperty() {
+        String filepath = System.getProperty(PROPERTY);
+        if (filepath == null || filepath.isEmpty())
+            return null;
+        try {
+            return load(filepath);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("cannot read the calibration " + filepath + " : " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * writes the calibration to a file.
+     *
+     * @param filepath the file to create
+     * @throws IOException
+     */
+    public void save(String filepath) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filepath)));
+        try {
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(WIDTH);
+            out.write(table);
+        } finally {
+            out.close();
+        }
+    }
+
+
+    /**
+     * corrects a frame, in place. Several threads may correct frames at the
+     * same time.
+     *
+     * @param pixels the 102 values of the frame, between 0 and 255
+     */
+    @Override
+    public void filter(int[] pixels) {
+        byte[] t = table;
+        for (int i = 0; i < WIDTH; i++)
+            pixels[i] = t[i << 8 | pixels[i] & 0xFF] & 0xFF;
+    }
+
+
+    /**
+     * does nothing : the correction does not depend on the previous frames.
+     */
+    @Override
+    public void reset() {
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * A frame read from a camera stream : the 102 values of the line, where it
+ * comes in the stream, and the line followed by the robot, once detected.
+ * Frames are meant to be reused, to avoid allocating anything per line.
+ */
+public class Frame {
+
+    /**
+     * the 102 values of the frame, between 0 and 255
+     */
+    public final int[] pixels = new int[Capture.FRAME_WIDTH];
+
+    /**
+     * the sequence number of the frame in its stream, starting at 0
+     */
+    public long sequence = -1;
+
+    /**
+     * the time at which the frame was captured, in microseconds since the
+     * epoch, or -1 if the stream does not tell
+     */
+    public long timestamp = -1;
+
+    /**
+     * when the frame was complete, from {@link System#nanoTime()}, or -1
+     */
+    public long receivedNanos = -1;
+
+    /**
+     * the time spent decoding the frame, in nanoseconds
+     */
+    public long parseNanos = 0;
+
+    /**
+     * the line detected in the frame (see {@link LineDetector}), if a
+     * detector ran on it
+     */
+    public final LineDetector.Line line = new LineDetector.Line();
+
+
+    /**
+     * copies another frame into this one.
+     *
+     * @param other the frame to copy
+     */
+    public void copyFrom(Frame other) {
+        System.arraycopy(other.pixels, 0, pixels, 0, pixels.length);
+        sequence = other.sequence;
+        timestamp = other.timestamp;
+        receivedNanos = other.receivedNanos;
+        parseNanos = other.parseNanos;
+        line.copyFrom(other.line);
+    }
+
+}
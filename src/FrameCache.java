@@ -0,0 +1,248 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the frames of a capture decoded in memory, around the frame being
+ * displayed, so that scrubbing, stepping backwards and playing in reverse do
+ * not decode anything.
+ * <p/>
+ * The frames are cached in blocks of {@value #BLOCK_SIZE} consecutive frames,
+ * each stored as one array of bytes (one byte per pixel). The blocks least
+ * recently used are evicted when the cache holds more than its maximum size.
+ * <p/>
+ * A background thread decodes the blocks around the cursor (see
+ * {@link #moveTo(int)}) before they are needed : ahead of it, in the direction
+ * it moves, as far as it goes in {@value #LOOKAHEAD_SECONDS} seconds at its
+ * current speed, and behind it, as far as the frames the viewer shows before
+ * the current one. The capture read must support concurrent calls.
+ */
+public class FrameCache implements Capture {
+
+    /**
+     * the number of frames per block
+     */
+    public static final int BLOCK_SIZE = 1024;
+
+    /**
+     * the system property holding the size of the cache, in megabytes
+     */
+    public static final String SIZE_PROPERTY = "kjunior.cache.size";
+
+    private static final int LOOKAHEAD_SECONDS = 2;
+    private static final int BLOCK_BYTES = BLOCK_SIZE * FRAME_WIDTH;
+
+    private final Capture capture;
+    private final int maxBlocks;
+    private final int behind; // the frames to keep before the cursor
+    private final Map<Integer, byte[]> blocks; // guarded by itself
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    // where the viewer is, and how it moves : written by the viewer, read by
+    // the prefetching thread
+    private volatile int cursor = 0, direction = 1;
+    private volatile double speed = 0; // frames per second
+    private long lastMove = System.nanoTime();
+
+    private final Thread prefetcher;
+    private volatile boolean closed = false;
+
+
+    /**
+     * creates a cache whose size is given by the {@value #SIZE_PROPERTY}
+     * system property (64 MB by default).
+     *
+     * @param capture the capture to cache
+     * @param behind  the number of frames to keep decoded before the cursor
+     */
+    public FrameCache(Capture capture, int behind) {
+        this(capture, behind, Long.getLong(SIZE_PROPERTY, 64) << 20);
+    }
+
+
+    /**
+     * starts the prefetching thread.
+     *
+     * @param capture  the capture to cache
+     * @param behind   the number of frames to keep decoded before the cursor
+     * @param maxBytes the maximum size of the frames cached, in bytes
+     */
+    public FrameCache(Capture capture, int behind, long maxBytes) {
+        this.capture = capture;
+        this.behind = behind;
+        this.maxBlocks = (int) Math.max(4, maxBytes / BLOCK_BYTES);
+        this.blocks = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > maxBlocks;
+            }
+        };
+
+        this.prefetcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prefetch();
+            }
+        }, "frame prefetcher");
+        prefetcher.setDaemon(true);
+        prefetcher.start();
+    }
+
+
+    /**
+     * tells where the viewer is. The direction and the speed at which it
+     * moves are deduced from the successive positions. Called by a single
+     * thread.
+     *
+     * @param frameNbr the frame displayed
+     */
+    public void moveTo(int frameNbr) {
+        long now = System.nanoTime();
+        int previous = cursor;
+        if (frameNbr != previous) {
+            double instant = Math.abs(frameNbr - previous) * 1e9 / Math.max(now - lastMove, 1);
+            speed = speed == 0 ? instant : 0.8 * speed + 0.2 * instant;
+            direction = frameNbr > previous ? 1 : -1;
+            lastMove = now;
+        }
+        cursor = frameNbr;
+
+        if (frameNbr / BLOCK_SIZE != previous / BLOCK_SIZE || frameNbr % (BLOCK_SIZE / 4) == 0) {
+            LockSupport.unpark(prefetcher);
+        }
+    }
+
+
+    @Override
+    public int getNbrOfFrames() {
+        return capture.getNbrOfFrames();
+    }
+
+
+    @Override
+    public void readFrame(int frameNbr, int[] pixels) {
+        int position = (frameNbr % BLOCK_SIZE) * FRAME_WIDTH;
+        byte[] block = getBlock(frameNbr / BLOCK_SIZE, position + FRAME_WIDTH);
+        for (int i = 0; i < FRAME_WIDTH; i++)
+            pixels[i] = block[position + i] & 0xFF;
+    }
+
+
+    @Override
+    public boolean hasTimestamps() {
+        return capture.hasTimestamps();
+    }
+
+
+    @Override
+    public long getTimestamp(int frameNbr) {
+        return capture.getTimestamp(frameNbr);
+    }
+
+
+    /**
+     * @param length the number of bytes needed in the block : a block cached
+     *               while the capture was shorter (see
+     *               {@link MappedCapture}) may have to be decoded again
+     * @return the block, decoded now if it is not cached
+     */
+    private byte[] getBlock(int blockNbr, int length) {
+        byte[] block;
+        synchronized (blocks) {
+            block = blocks.get(blockNbr);
+        }
+        if (block != null && block.length >= length) {
+            hits.incrementAndGet();
+            return block;
+        }
+        misses.incrementAndGet();
+        return load(blockNbr);
+    }
+
+
+    /**
+     * decodes a block and caches it.
+     */
+    private byte[] load(int blockNbr) {
+        int first = blockNbr * BLOCK_SIZE;
+        int count = Math.min(BLOCK_SIZE, capture.getNbrOfFrames() - first);
+        byte[] block = new byte[count * FRAME_WIDTH];
+        int[] pixels = new int[FRAME_WIDTH];
+        for (int f = 0; f < count; f++) {
+            capture.readFrame(first + f, pixels);
+            for (int i = 0; i < FRAME_WIDTH; i++)
+                block[f * FRAME_WIDTH + i] = (byte) pixels[i];
+        }
+
+        synchronized (blocks) {
+            blocks.put(blockNbr, block);
+        }
+        return block;
+    }
+
+
+    /**
+     * decodes the blocks around the cursor, the nearest first, then waits for
+     * the cursor to move.
+     */
+    private void prefetch() {
+        while (!closed) {
+            int position = cursor, way = direction;
+            int lastBlock = (capture.getNbrOfFrames() - 1) / BLOCK_SIZE;
+            // at most half of the cache ahead, so that the blocks prefetched
+            // do not evict each other
+            int ahead = (int) Math.min(Math.max(speed * LOOKAHEAD_SECONDS, BLOCK_SIZE),
+                    (long) maxBlocks / 2 * BLOCK_SIZE);
+            int back = Math.min(behind + BLOCK_SIZE, maxBlocks / 4 * BLOCK_SIZE);
+            int aheadBlocks = ahead / BLOCK_SIZE + 1, backBlocks = back / BLOCK_SIZE + 1;
+            int start = position / BLOCK_SIZE;
+
+            // the blocks ahead first, from the nearest, then the blocks behind
+            boolean moved = false;
+            for (int i = 0; !moved && i <= aheadBlocks + backBlocks; i++) {
+                int blockNbr = i <= aheadBlocks ? start + way * i : start - way * (i - aheadBlocks);
+                if (blockNbr < 0 || blockNbr > lastBlock)
+                    continue;
+                int length = Math.min(BLOCK_SIZE, capture.getNbrOfFrames() - blockNbr * BLOCK_SIZE) * FRAME_WIDTH;
+                byte[] block;
+                synchronized (blocks) {
+                    block = blocks.get(blockNbr);
+                }
+                if (block == null || block.length < length)
+                    load(blockNbr);
+                moved = cursor / BLOCK_SIZE != start || direction != way;
+            }
+            if (!moved)
+                LockSupport.park(this);
+        }
+    }
+
+
+    /**
+     * @return the number of frames read from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+
+    /**
+     * @return the number of frames whose block had to be decoded when they
+     * were read
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+
+    /**
+     * stops the prefetching thread. The capture cached is not closed : it
+     * belongs to the caller.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(prefetcher);
+    }
+
+}
@@ -0,0 +1,165 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Decodes frames from the bytes of a stream, as they arrive, in the text or
+ * the binary format (see {@link BinaryCapture}). The format is recognized from
+ * the first byte of the stream : a binary capture starts with 'K', which
+ * never starts a text capture.
+ * <p/>
+ * The decoder keeps its state between two calls, so the bytes may be given in
+ * pieces of any size, and a frame may be split between two pieces. The time
+ * spent decoding a frame, over all the calls, is given with the frame.
+ * <p/>
+ * The timestamp and the sequence number of a frame are taken from the stream
+ * when it carries them (see {@link PixelParser} and {@link BinaryCapture}).
+ * Otherwise, the frames are numbered in the order they are decoded.
+ */
+public class FrameDecoder {
+
+    private static final int UNKNOWN = 0, TEXT = 1, HEADER = 2, BINARY = 3;
+
+    private int format = UNKNOWN;
+    private long sequence = 0; // the sequence number of the next frame
+
+    private final int[] pixels = new int[Capture.FRAME_WIDTH];
+    private final PixelParser parser = new PixelParser(pixels);
+
+    private byte[] record = new byte[BinaryCapture.HEADER_SIZE]; // the header, then a frame
+    private int filled = 0; // number of bytes of the record already received
+    private boolean timestamps, sequences;
+    private long parseNanos = 0; // spent on the frame being decoded, so far
+
+
+    /**
+     * decodes bytes until a frame is complete.
+     *
+     * @param buffer the bytes received
+     * @param offset the position of the first byte to decode
+     * @param limit  the position after the last byte to decode
+     * @param frame  the frame to fill when it is complete
+     * @return the position right after the end of the frame completed, or -1
+     * if all the bytes were decoded without completing a frame
+     * @throws IOException if the header of a binary stream is invalid
+     */
+    public int decode(byte[] buffer, int offset, int limit, Frame frame) throws IOException {
+        long start = System.nanoTime();
+        int end = decodeFrame(buffer, offset, limit, frame);
+        long now = System.nanoTime();
+        parseNanos += now - start;
+        if (end >= 0) {
+            frame.receivedNanos = now;
+            frame.parseNanos = parseNanos;
+            parseNanos = 0;
+        }
+        return end;
+    }
+
+
+    private int decodeFrame(byte[] buffer, int offset, int limit, Frame frame) throws IOException {
+        if (offset < limit && format == UNKNOWN) {
+            format = buffer[offset] == BinaryCapture.MAGIC[0] ? HEADER : TEXT;
+        }
+
+        if (format == TEXT) {
+            int end = parser.parse(buffer, offset, limit);
+            if (end >= 0) {
+                System.arraycopy(pixels, 0, frame.pixels, 0, pixels.length);
+                frame.timestamp = parser.getTimestamp();
+                setSequence(frame, parser.getSequence());
+            }
+            return end;
+        }
+
+        while (offset < limit) {
+            int n = Math.min(limit - offset, record.length - filled);
+            System.arraycopy(buffer, offset, record, filled, n);
+            filled += n;
+            offset += n;
+            if (filled < record.length)
+                return -1;
+
+            filled = 0;
+            if (format == HEADER) {
+                startFrames();
+            } else {
+                fill(frame);
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * reads the header received, and prepares to receive the frames
+     */
+    private void startFrames() throws IOException {
+        int flags = BinaryCapture.readHeader(new ByteArrayInputStream(record));
+        if (flags < 0) {
+            throw new IOException("the stream is neither a text nor a binary capture");
+        }
+        this.timestamps = (flags & BinaryCapture.FLAG_TIMESTAMPS) != 0;
+        this.sequences = (flags & BinaryCapture.FLAG_SEQUENCES) != 0;
+        this.record = new byte[BinaryCapture.getRecordSize(flags)];
+        this.format = BINARY;
+    }
+
+
+    private void fill(Frame frame) {
+        int offset = 0;
+        long timestamp = -1, received = -1;
+        if (timestamps) {
+            timestamp = getLong(offset);
+            offset += 8;
+        }
+        if (sequences) {
+            received = getLong(offset);
+            offset += 8;
+        }
+        for (int i = 0; i < Capture.FRAME_WIDTH; i++)
+            frame.pixels[i] = record[offset + i] & 0xFF;
+        frame.timestamp = timestamp;
+        setSequence(frame, received);
+    }
+
+
+    private long getLong(int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++)
+            value = (value << 8) | (record[i] & 0xFF);
+        return value;
+    }
+
+
+    /**
+     * numbers the frame : the numbering continues from the sequence number
+     * received, if any
+     */
+    private void setSequence(Frame frame, long received) {
+        if (received >= 0)
+            sequence = received;
+        frame.sequence = sequence++;
+    }
+
+
+    /**
+     * forgets the stream decoded so far : the next bytes start a new stream,
+     * whose format is recognized again.
+     */
+    public void reset() {
+        format = UNKNOWN;
+        parser.reset();
+        record = new byte[BinaryCapture.HEADER_SIZE];
+        filled = 0;
+    }
+
+
+    /**
+     * @return the number of malformed values met in the text format
+     */
+    public long getMalformedCount() {
+        return parser.getMalformedCount();
+    }
+
+}
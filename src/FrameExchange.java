@@ -0,0 +1,104 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands the latest frame over from a thread reading the camera to the Swing
+ * thread painting it, without any lock.
+ * <p/>
+ * Three buffers are used : the reader fills the back buffer while the painter
+ * reads the front buffer, and a complete frame is passed from one to the other
+ * through the third one, with an atomic swap. This way, the reader never
+ * blocks, and the painter always sees a complete frame, the most recent one.
+ * <p/>
+ * Publishing a frame asks for a repaint, unless one is already pending : the
+ * repaints are coalesced. The frames published while the display could not
+ * keep up, and replaced by a newer one before being painted, are counted as
+ * dropped.
+ */
+public class FrameExchange {
+
+    private static final int FRESH = 4; // set when the middle buffer holds a frame not painted yet
+
+    private final Frame[] buffers = {new Frame(), new Frame(), new Frame()};
+    private final AtomicInteger middle = new AtomicInteger(1); // index of the middle buffer | FRESH
+    private int back = 0; // owned by the reader
+    private int front = 2; // owned by the painter
+
+    private final AtomicBoolean repaintPending = new AtomicBoolean(false);
+    private final AtomicLong published = new AtomicLong(), dropped = new AtomicLong();
+    private final Runnable repaint;
+
+
+    /**
+     * @param component the component to repaint when a frame is published
+     */
+    public FrameExchange(final Component component) {
+        this.repaint = new Runnable() {
+            @Override
+            public void run() {
+                repaintPending.set(false);
+                component.repaint();
+            }
+        };
+    }
+
+
+    /**
+     * @return the buffer to fill with the next frame. It changes every time a
+     * frame is published. Reader thread only.
+     */
+    public Frame getBackBuffer() {
+        return buffers[back];
+    }
+
+
+    /**
+     * publishes the frame held by the back buffer and asks for a repaint.
+     * Never blocks. Reader thread only.
+     */
+    public void publish() {
+        int previous = middle.getAndSet(back | FRESH);
+        if ((previous & FRESH) != 0) {
+            dropped.incrementAndGet(); // never painted
+        }
+        back = previous & ~FRESH;
+        published.incrementAndGet();
+
+        if (repaintPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(repaint);
+        }
+    }
+
+
+    /**
+     * @return the latest complete frame. It stays untouched until the next
+     * call. Painting thread only.
+     */
+    public Frame getFrontBuffer() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & ~FRESH;
+        }
+        return buffers[front];
+    }
+
+
+    /**
+     * @return the number of frames published so far
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+
+    /**
+     * @return the number of frames which were replaced by a newer one before
+     * being painted, because the display could not keep up
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+}
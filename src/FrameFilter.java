@@ -0,0 +1,26 @@
+/**
+ * A stage of a {@link FilterPipeline} : changes the values of the frames of a
+ * stream, in place, one frame after another.
+ * <p/>
+ * A filter is called by the thread reading the stream only. It must not
+ * allocate anything per frame, nor hold frames back : a frame comes out of
+ * the filter as soon as it goes in.
+ */
+public interface FrameFilter {
+
+    /**
+     * filters a frame, in place.
+     *
+     * @param pixels the 102 values of the frame, between 0 and 255, replaced
+     *               by the values filtered, between 0 and 255 too
+     */
+    void filter(int[] pixels);
+
+
+    /**
+     * forgets the frames filtered so far : the next frame starts a new
+     * stream.
+     */
+    void reset();
+
+}
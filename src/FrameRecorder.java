@@ -0,0 +1,228 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records the frames of a live stream to binary captures (see
+ * {@link BinaryCapture}), in the background : the thread reading the stream
+ * only copies each frame into a queue, and a writer thread drains the queue to
+ * the disk.
+ * <p/>
+ * The queue is a ring of frames allocated once, with one producer (the reading
+ * thread) and one consumer (the writer) : neither locks nor allocates. When
+ * the queue is full, because the disk cannot keep up, the frame is dropped
+ * and counted : the reading thread never blocks.
+ * <p/>
+ * The writer goes through a large buffer, which is flushed when the queue is
+ * empty. A new file is started when the current one reaches the maximum size
+ * : the files are named <code>prefix-0000.kjc</code>,
+ * <code>prefix-0001.kjc</code>, ... Every frame is recorded with its
+ * timestamp, or the time it was received if the stream does not tell, and with
+ * its sequence number : the frames lost before reaching the viewer can still
+ * be told from the recording.
+ */
+public class FrameRecorder {
+
+    /**
+     * the extension of the files written
+     */
+    public static final String EXTENSION = ".kjc";
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long IDLE_WAIT = 5000000; // ns
+
+    private final String prefix;
+    private final long maxFileSize;
+
+    private final Frame[] ring;
+    private final int mask;
+    private final AtomicLong queued = new AtomicLong(); // written by the producer only
+    private final AtomicLong written = new AtomicLong(); // written by the consumer only
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed = false, failed = false;
+    private volatile int nbrOfFiles = 0;
+    private final Thread writer;
+
+
+    /**
+     * starts the writer thread. The first file is created when the first
+     * frame is written.
+     *
+     * @param prefix      the path of the files, without their number and
+     *                    extension
+     * @param maxFileSize the size at which a new file is started, in bytes
+     * @param capacity    the number of frames the queue can hold, rounded up
+     *                    to a power of 2
+     */
+    public FrameRecorder(String prefix, long maxFileSize, int capacity) {
+        this.prefix = prefix;
+        this.maxFileSize = maxFileSize;
+
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.ring = new Frame[size];
+        for (int i = 0; i < size; i++)
+            ring[i] = new Frame();
+        this.mask = size - 1;
+
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "frame recorder");
+        writer.start();
+    }
+
+
+    /**
+     * queues a frame to be written. Never blocks : if the queue is full, the
+     * frame is dropped. Only one thread may record frames.
+     *
+     * @param frame the frame to record, which is copied
+     * @return false if the frame was dropped, or the recorder is closed
+     */
+    public boolean record(Frame frame) {
+        if (closed || failed)
+            return false;
+        long tail = queued.get();
+        if (tail - written.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        Frame slot = ring[(int) tail & mask];
+        slot.copyFrom(frame);
+        if (slot.timestamp < 0)
+            slot.timestamp = System.currentTimeMillis() * 1000;
+        queued.lazySet(tail + 1);
+        return true;
+    }
+
+
+    /**
+     * drains the queue until the recorder is closed.
+     */
+    private void write() {
+        BinaryCaptureWriter out = null;
+        long recordSize = BinaryCapture.getRecordSize(
+                BinaryCapture.FLAG_TIMESTAMPS | BinaryCapture.FLAG_SEQUENCES);
+        long fileSize = 0;
+
+        try {
+            while (true) {
+                long head = written.get();
+                long tail = queued.get();
+                if (head == tail) {
+                    if (closed)
+                        break;
+                    if (out != null)
+                        out.flush();
+                    LockSupport.parkNanos(IDLE_WAIT);
+                    continue;
+                }
+
+                for (; head < tail; head++) {
+                    if (out == null || fileSize + recordSize > maxFileSize) {
+                        if (out != null)
+                            out.close();
+                        out = new BinaryCaptureWriter(new BufferedOutputStream(
+                                new FileOutputStream(getFilepath(nbrOfFiles)), BUFFER_SIZE), true, true);
+                        nbrOfFiles++;
+                        fileSize = BinaryCapture.HEADER_SIZE;
+                    }
+                    Frame frame = ring[(int) head & mask];
+                    out.writeFrame(frame.pixels, frame.timestamp, frame.sequence);
+                    fileSize += recordSize;
+                    written.lazySet(head + 1);
+                }
+            }
+        } catch (IOException e) {
+            failed = true;
+            e.printStackTrace();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @param number the number of a file, starting at 0
+     * @return the path of this file
+     */
+    public String getFilepath(int number) {
+        return prefix + String.format(Locale.ROOT, "-%04d", number) + EXTENSION;
+    }
+
+
+    /**
+     * @return the number of files created so far
+     */
+    public int getNbrOfFiles() {
+        return nbrOfFiles;
+    }
+
+
+    /**
+     * @return the number of frames written so far
+     */
+    public long getRecordedCount() {
+        return written.get();
+    }
+
+
+    /**
+     * @return the number of frames dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+
+    /**
+     * @return true if writing failed : the frames are not recorded anymore
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+
+    /**
+     * stops recording. Returns once the frames already queued are written and
+     * the last file is flushed and closed, so that it never ends on a partial
+     * frame.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true; // the file must still be complete
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+
+    /**
+     * waits for the frames queued to be written, and the last file closed.
+     *
+     * @throws InterruptedException
+     */
+    public void await() throws InterruptedException {
+        writer.join();
+    }
+
+}
@@ -0,0 +1,390 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches a capture for the frames matching a predicate over their pixels,
+ * using every core (see {@link ParallelScan}). The frames found are streamed :
+ * they can be read while the search goes on, in blocks, as the chunks of the
+ * capture find them.
+ * <p/>
+ * The predicates can be written as a query (see {@link #parse(String)}) :
+ * <ul>
+ * <li><code>pixel 40-60 &lt; 30</code> : every pixel from 40 to 60 is below
+ * 30 (or above, with '&gt;')</li>
+ * <li><code>mean MIDDLE &lt; 60</code> : the mean of the MIDDLE segment (or
+ * LEFT, RIGHT, or a range of pixels such as 40-60) is below 60</li>
+ * <li><code>edge 45-56</code> : the strongest edge of the line lies between
+ * the pixels 45 and 56</li>
+ * <li><code>edge crosses 51</code> : the strongest edge of the line went past
+ * the pixel 51 since the previous frame</li>
+ * </ul>
+ * An edge is the largest difference between two neighbouring pixels, if it
+ * reaches {@value #MIN_EDGE}.
+ */
+public class FrameSearch {
+
+    /**
+     * the smallest difference between two neighbouring pixels seen as an edge
+     */
+    public static final int MIN_EDGE = 32;
+
+    private static final int SEGMENT_WIDTH = Capture.FRAME_WIDTH / 3;
+    private static final String[] SEGMENT_NAMES = {"LEFT", "MIDDLE", "RIGHT"};
+    private static final int BLOCK_SIZE = 256; // frames found, handed over at once
+    private static final int PROGRESS_STEP = 4096; // frames scanned between two progress updates
+
+
+    /**
+     * tells whether a frame matches.
+     */
+    public interface Predicate {
+
+        /**
+         * @param previous the values of the previous frame, or null for the
+         *                 first frame of the capture
+         * @param pixels   the 102 values of the frame
+         * @return true if the frame matches
+         */
+        boolean matches(int[] previous, int[] pixels);
+    }
+
+
+    /**
+     * the frames found by a chunk, not handed over yet
+     */
+    private static class Block {
+        final int[] previous = new int[Capture.FRAME_WIDTH];
+        int previousFrame = -2;
+        final int[] found = new int[BLOCK_SIZE];
+        int count = 0;
+        int scanned = 0;
+    }
+
+
+    private final Capture capture;
+    private final Predicate predicate;
+    private final int nbrOfFrames;
+
+    // the frames found so far, in the order the chunks found them
+    private int[] matches = new int[1024];
+    private int nbrOfMatches = 0;
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private volatile boolean done = false;
+
+
+    /**
+     * @param capture   the capture to search, whose readFrame method must
+     *                  support concurrent calls
+     * @param predicate what to look for
+     */
+    public FrameSearch(Capture capture, Predicate predicate) {
+        this.capture = capture;
+        this.predicate = predicate;
+        this.nbrOfFrames = capture.getNbrOfFrames();
+    }
+
+
+    /**
+     * starts searching the frames of the capture, as many as it has now, in
+     * the background.
+     *
+     * @param pool the threads to use
+     */
+    public void start(final ForkJoinPool pool) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Block last = ParallelScan.scan(capture, 0, nbrOfFrames, processor, pool, cancelled);
+                    handOver(last);
+                } finally {
+                    done = true;
+                }
+            }
+        }, "frame search");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    private final ParallelScan.Processor<Block> processor = new ParallelScan.Processor<Block>() {
+
+        @Override
+        public Block newResult() {
+            return new Block();
+        }
+
+
+        @Override
+        public void process(Block block, int frameNbr, int[] pixels) {
+            int[] previous = null;
+            if (frameNbr > 0) {
+                previous = block.previous;
+                if (block.previousFrame != frameNbr - 1)
+                    capture.readFrame(frameNbr - 1, previous); // the first frame of the chunk
+            }
+            if (predicate.matches(previous, pixels)) {
+                block.found[block.count++] = frameNbr;
+                if (block.count == BLOCK_SIZE)
+                    handOver(block);
+            }
+            System.arraycopy(pixels, 0, block.previous, 0, pixels.length);
+            block.previousFrame = frameNbr;
+
+            if (++block.scanned == PROGRESS_STEP) {
+                scanned.addAndGet(block.scanned);
+                block.scanned = 0;
+            }
+        }
+
+
+        @Override
+        public void merge(Block block, Block other) {
+            handOver(other);
+        }
+    };
+
+
+    /**
+     * adds the frames found by a chunk to the matches
+     */
+    private void handOver(Block block) {
+        scanned.addAndGet(block.scanned);
+        block.scanned = 0;
+        if (block.count == 0)
+            return;
+
+        synchronized (this) {
+            if (nbrOfMatches + block.count > matches.length)
+                matches = Arrays.copyOf(matches, Math.max(matches.length * 2, nbrOfMatches + block.count));
+            System.arraycopy(block.found, 0, matches, nbrOfMatches, block.count);
+            nbrOfMatches += block.count;
+        }
+        block.count = 0;
+    }
+
+
+    /**
+     * @return the number of frames found so far
+     */
+    public synchronized int getNbrOfMatches() {
+        return nbrOfMatches;
+    }
+
+
+    /**
+     * @return the frames found so far, sorted
+     */
+    public int[] getMatches() {
+        int[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(matches, nbrOfMatches);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+
+    /**
+     * @return the part of the capture searched so far, between 0 and 1 : 1
+     * once the whole capture is searched
+     */
+    public double getProgress() {
+        return done && !cancelled.get() ? 1 : nbrOfFrames == 0 ? 0 : Math.min(1, (double) scanned.get() / nbrOfFrames);
+    }
+
+
+    /**
+     * @return true once the whole capture is searched, or the search cancelled
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+
+    /**
+     * stops the search : the chunks stop reading the capture at their next
+     * frame, and the search is done once they all stopped. The frames found
+     * so far stay available.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+
+    /**
+     * every pixel of a range is below (or above) a value.
+     *
+     * @param from  the first pixel of the range
+     * @param to    the last pixel of the range
+     * @param below true for below, false for above
+     * @param value the value compared with, excluded
+     */
+    public static Predicate threshold(final int from, final int to, final boolean below, final int value) {
+        return new Predicate() {
+            @Override
+            public boolean matches(int[] previous, int[] pixels) {
+                for (int i = from; i <= to; i++) {
+                    if (below ? pixels[i] >= value : pixels[i] <= value)
+                        return false;
+                }
+                return true;
+            }
+        };
+    }
+
+
+    /**
+     * the mean of a range of pixels is below (or above) a value.
+     *
+     * @param from  the first pixel of the range
+     * @param to    the last pixel of the range
+     * @param below true for below, false for above
+     * @param value the value compared with, excluded
+     */
+    public static Predicate mean(final int from, final int to, final boolean below, final int value) {
+        final int nbrOfPixels = to - from + 1;
+        return new Predicate() {
+            @Override
+            public boolean matches(int[] previous, int[] pixels) {
+                int sum = 0;
+                for (int i = from; i <= to; i++)
+                    sum += pixels[i];
+                // compares the sums, to stay exact
+                return below ? sum < value * nbrOfPixels : sum > value * nbrOfPixels;
+            }
+        };
+    }
+
+
+    /**
+     * the strongest edge of the line lies within a range.
+     *
+     * @param from the first position of the range
+     * @param to   the last position of the range
+     */
+    public static Predicate edge(final int from, final int to) {
+        return new Predicate() {
+            @Override
+            public boolean matches(int[] previous, int[] pixels) {
+                int position = getEdge(pixels);
+                return position >= from && position <= to;
+            }
+        };
+    }
+
+
+    /**
+     * the strongest edge of the line went past a position since the previous
+     * frame : it was on one side of it, and is now on the other side, or on
+     * it.
+     *
+     * @param position the position crossed
+     */
+    public static Predicate edgeCrossing(final int position) {
+        return new Predicate() {
+            @Override
+            public boolean matches(int[] previous, int[] pixels) {
+                if (previous == null)
+                    return false;
+                int before = getEdge(previous), after = getEdge(pixels);
+                if (before < 0 || after < 0)
+                    return false;
+                return before < position ? after >= position : before > position && after <= position;
+            }
+        };
+    }
+
+
+    /**
+     * @param pixels the values of a line
+     * @return the position of its strongest edge, between the two pixels with
+     * the largest difference (the position of the second one), or -1 if no
+     * difference reaches {@value #MIN_EDGE}
+     */
+    public static int getEdge(int[] pixels) {
+        int position = -1, strongest = MIN_EDGE - 1;
+        for (int i = 1; i < pixels.length; i++) {
+            int difference = Math.abs(pixels[i] - pixels[i - 1]);
+            if (difference > strongest) {
+                strongest = difference;
+                position = i;
+            }
+        }
+        return position;
+    }
+
+
+    /**
+     * reads a query (see the description of the class).
+     *
+     * @param query the query, such as <code>mean MIDDLE &lt; 60</code>
+     * @return the predicate
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    public static Predicate parse(String query) {
+        String[] words = query.trim().split("\\s+");
+        String kind = words[0].toLowerCase(Locale.ROOT);
+
+        if (kind.equals("edge") && words.length == 3 && words[1].equalsIgnoreCase("crosses")) {
+            return edgeCrossing(parsePixel(words[2]));
+        } else if (kind.equals("edge") && words.length == 2) {
+            int[] range = parseRange(words[1]);
+            return edge(range[0], range[1]);
+        } else if ((kind.equals("pixel") || kind.equals("mean")) && words.length == 4
+                && (words[2].equals("<") || words[2].equals(">"))) {
+            int[] range = parseRange(words[1]);
+            boolean below = words[2].equals("<");
+            int value = parseNumber(words[3]);
+            return kind.equals("pixel") ? threshold(range[0], range[1], below, value)
+                    : mean(range[0], range[1], below, value);
+        }
+        throw new IllegalArgumentException("unknown query : " + query
+                + " (expected pixel|mean <range> <|> <value>, edge <range>, or edge crosses <pixel>)");
+    }
+
+
+    /**
+     * reads LEFT, MIDDLE, RIGHT, a pixel, or a range of pixels such as 40-60
+     */
+    private static int[] parseRange(String word) {
+        for (int i = 0; i < SEGMENT_NAMES.length; i++) {
+            if (SEGMENT_NAMES[i].equalsIgnoreCase(word))
+                return new int[]{i * SEGMENT_WIDTH, (i + 1) * SEGMENT_WIDTH - 1};
+        }
+        int dash = word.indexOf('-');
+        if (dash < 0) {
+            int pixel = parsePixel(word);
+            return new int[]{pixel, pixel};
+        }
+        int from = parsePixel(word.substring(0, dash)), to = parsePixel(word.substring(dash + 1));
+        if (from > to)
+            throw new IllegalArgumentException("empty range : " + word);
+        return new int[]{from, to};
+    }
+
+
+    private static int parsePixel(String word) {
+        int pixel = parseNumber(word);
+        if (pixel >= Capture.FRAME_WIDTH)
+            throw new IllegalArgumentException("no such pixel : " + word);
+        return pixel;
+    }
+
+
+    private static int parseNumber(String word) {
+        try {
+            int number = Integer.parseInt(word);
+            if (number < 0)
+                throw new IllegalArgumentException("negative number : " + word);
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number : " + word);
+        }
+    }
+
+}
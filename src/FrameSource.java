@@ -0,0 +1,30 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A live stream of frames, whatever the transport : standard input, a file
+ * being written, a named pipe or a TCP connection. Every implementation
+ * accepts both the text and the binary formats, and tells them apart by
+ * itself.
+ * <p/>
+ * A source is read by a single thread.
+ */
+public interface FrameSource extends Closeable {
+
+    /**
+     * reads the next frame, waiting for it if needed.
+     *
+     * @param frame the frame to fill : its pixels, its sequence number, and
+     *              its timestamp when the stream has one
+     * @return false at the end of the stream
+     * @throws IOException
+     */
+    boolean read(Frame frame) throws IOException;
+
+
+    /**
+     * @return the number of malformed values met in the text format
+     */
+    long getMalformedCount();
+
+}
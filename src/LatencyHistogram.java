@@ -0,0 +1,119 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets, to get their percentiles at any time. The
+ * buckets grow exponentially, with 8 buckets between two powers of 2, so a
+ * percentile is known within 12.5 %, whatever the duration, from nanoseconds
+ * to hours.
+ * <p/>
+ * Recording a duration is an increment, without lock nor allocation, and may
+ * be done by several threads at once.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 8; // between two powers of 2
+    private static final int SUB_BITS = 3;
+    private static final int LINEAR = 2 * SUB_BUCKETS; // below, one bucket per nanosecond
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + (63 - SUB_BITS) * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong(), sum = new AtomicLong(), max = new AtomicLong();
+
+
+    /**
+     * records a duration.
+     *
+     * @param nanos the duration, in nanoseconds. Negative durations count as
+     *              0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long previous;
+        while (nanos > (previous = max.get()) && !max.compareAndSet(previous, nanos)) {
+            // another thread recorded a maximum at the same time
+        }
+    }
+
+
+    private static int bucketOf(long nanos) {
+        if (nanos < LINEAR)
+            return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos); // >= SUB_BITS + 1
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+
+    /**
+     * @return the largest duration of the bucket
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR)
+            return bucket;
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+        long sub = (bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the duration below which this percentage of the durations
+     * recorded fall, in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(upperBoundOf(i), max.get());
+        }
+        return max.get();
+    }
+
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+
+    /**
+     * @return the mean of the durations recorded, in nanoseconds
+     */
+    public double getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+
+    /**
+     * @return the longest duration recorded, in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+
+    /**
+     * forgets the durations recorded so far.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+}
@@ -0,0 +1,318 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Finds the line followed by the robot in a frame of the camera : a dark line
+ * on a light floor, or a light line on a dark floor.
+ * <p/>
+ * The values are smoothed with a [1 2 1] kernel, to dampen the noise of the
+ * sensor, then derived with central differences. The line starts at a
+ * falling edge (from the floor to the line) and ends at a rising edge : the
+ * strongest pair, or a single edge and the border of the frame when the line
+ * is partly out of sight. The position of an edge is refined to a fraction of
+ * pixel, by fitting a parabola through the gradient around its peak.
+ * <p/>
+ * The confidence, between 0 and 1, grows with the contrast of the weaker
+ * edge, and is halved when the line is cut by the border of the frame.
+ * <p/>
+ * Detecting a line allocates nothing : the intermediate values go to arrays
+ * allocated once, and the smoothing and derivation loops have no branch, so
+ * that the JIT unrolls them. A detector is used by one thread at a time.
+ * <p/>
+ * Usage, to export the line detected in every frame of a capture as CSV :
+ * <code>java LineDetector [--light] capture [output.csv]</code>
+ */
+public class LineDetector {
+
+    /**
+     * the smallest contrast of an edge, in gray levels
+     */
+    public static final int MIN_CONTRAST = 24;
+
+    /**
+     * the contrast of the edges above which the confidence is 1, in gray
+     * levels
+     */
+    public static final int FULL_CONTRAST = 128;
+
+    private static final int WIDTH = Capture.FRAME_WIDTH;
+    // the gradient of a sharp step of one gray level, in the units of the
+    // gradient : the kernel weighs 4, and the central difference spans 2
+    // pixels, of which the step covers 3/4
+    private static final int STEP_GRADIENT = 3;
+
+
+    /**
+     * the line detected in a frame. The positions are in pixels, from the left
+     * of the first pixel : the pixel i covers [i, i + 1).
+     */
+    public static class Line {
+
+        /**
+         * the left edge of the line, or NaN if no line was found
+         */
+        public double left = Double.NaN;
+
+        /**
+         * the right edge of the line, or NaN if no line was found
+         */
+        public double right = Double.NaN;
+
+        /**
+         * the centre of the line, or NaN if no line was found
+         */
+        public double centre = Double.NaN;
+
+        /**
+         * how sure the detection is, between 0 (no line) and 1
+         */
+        public double confidence = 0;
+
+
+        /**
+         * @return true if a line was found
+         */
+        public boolean isFound() {
+            return confidence > 0;
+        }
+
+
+        /**
+         * appends the centre and the confidence of the line, such as
+         * <code>50.5 (87 %)</code>, or "none".
+         *
+         * @param row the row to append to
+         * @return the row
+         */
+        public TextRow appendTo(TextRow row) {
+            if (!isFound())
+                return row.append("none");
+            long tenths = Math.round(centre * 10);
+            return row.append(tenths / 10).append(".").append(tenths % 10)
+                    .append(" (").append(Math.round(confidence * 100)).append(" %)");
+        }
+
+
+        /**
+         * forgets the line : none was found.
+         */
+        public void clear() {
+            left = right = centre = Double.NaN;
+            confidence = 0;
+        }
+
+
+        /**
+         * copies another line into this one.
+         *
+         * @param other the line to copy
+         */
+        public void copyFrom(Line other) {
+            left = other.left;
+            right = other.right;
+            centre = other.centre;
+            confidence = other.confidence;
+        }
+    }
+
+
+    private final int[] smoothed = new int[WIDTH]; // 4 times the values
+    private final int[] gradient = new int[WIDTH]; // falling from the floor to the line when negative
+    private final int polarity;
+
+
+    public static void main(String[] args) throws IOException {
+        boolean lightLine = args.length > 0 && args[0].equals("--light");
+        int first = lightLine ? 1 : 0;
+        if (args.length - first < 1 || args.length - first > 2) {
+            System.err.println("usage : java LineDetector [--light] <capture> [output.csv]");
+            System.exit(1);
+        }
+
+        Capture capture = Captures.open(args[first]);
+        Writer out = new BufferedWriter(new OutputStreamWriter(args.length - first == 2
+                ? new FileOutputStream(args[first + 1]) : System.out, "US-ASCII"), 1 << 16);
+        try {
+            export(capture, new LineDetector(lightLine), out);
+        } finally {
+            out.close();
+            capture.close();
+        }
+    }
+
+
+    /**
+     * detects a dark line on a light floor.
+     */
+    public LineDetector() {
+        this(false);
+    }
+
+
+    /**
+     * @param lightLine true to detect a light line on a dark floor, false for
+     *                  a dark line on a light floor
+     */
+    public LineDetector(boolean lightLine) {
+        this.polarity = lightLine ? -1 : 1;
+    }
+
+
+    /**
+     * detects the line in a frame.
+     *
+     * @param pixels the 102 values of the frame
+     * @param line   receives the line found, if any
+     * @return true if a line was found
+     */
+    public boolean detect(int[] pixels, Line line) {
+        int[] s = smoothed, g = gradient;
+
+        // smoothing : the borders are repeated
+        s[0] = 3 * pixels[0] + pixels[1];
+        for (int i = 1; i < WIDTH - 1; i++)
+            s[i] = pixels[i - 1] + 2 * pixels[i] + pixels[i + 1];
+        s[WIDTH - 1] = pixels[WIDTH - 2] + 3 * pixels[WIDTH - 1];
+
+        // central differences : no edge on the borders
+        g[0] = g[WIDTH - 1] = 0;
+        int sign = polarity;
+        for (int i = 1; i < WIDTH - 1; i++)
+            g[i] = sign * (s[i + 1] - s[i - 1]);
+
+        int threshold = MIN_CONTRAST * STEP_GRADIENT;
+        int falling = peak(0, WIDTH, -1, threshold);
+        int rising = peak(0, WIDTH, 1, threshold);
+        if (falling < 0 && rising < 0) {
+            line.clear();
+            return false;
+        }
+
+        // the strongest falling edge with the strongest rising edge after it,
+        // or the strongest rising edge with the strongest falling edge before
+        // it : the stronger pair wins
+        int risingAfter = falling < 0 ? -1 : peak(falling + 1, WIDTH, 1, threshold);
+        int fallingBefore = rising < 0 ? -1 : peak(0, rising, -1, threshold);
+        if (strength(falling) + strength(risingAfter) >= strength(fallingBefore) + strength(rising)) {
+            setLine(line, falling, risingAfter);
+        } else {
+            setLine(line, fallingBefore, rising);
+        }
+        return true;
+    }
+
+
+    /**
+     * @return the position of the strongest gradient of a direction, reaching
+     * the threshold, or -1 if there is none
+     */
+    private int peak(int from, int to, int direction, int threshold) {
+        int position = -1, strongest = threshold - 1;
+        for (int i = from; i < to; i++) {
+            int value = direction * gradient[i];
+            if (value > strongest) {
+                strongest = value;
+                position = i;
+            }
+        }
+        return position;
+    }
+
+
+    private int strength(int position) {
+        return position < 0 ? 0 : Math.abs(gradient[position]);
+    }
+
+
+    /**
+     * sets the line between two edges, either of which may be missing (-1) :
+     * the line then goes on to the border
+     */
+    private void setLine(Line line, int falling, int rising) {
+        line.left = falling < 0 ? 0 : refine(falling);
+        line.right = rising < 0 ? WIDTH : refine(rising);
+        line.centre = (line.left + line.right) / 2;
+
+        double contrast;
+        if (falling >= 0 && rising >= 0) {
+            contrast = Math.min(strength(falling), strength(rising));
+        } else {
+            contrast = Math.max(strength(falling), strength(rising)) / 2.0;
+        }
+        line.confidence = Math.min(1, contrast / (STEP_GRADIENT * FULL_CONTRAST));
+    }
+
+
+    /**
+     * @return the position of an edge, to a fraction of pixel : the top of the
+     * parabola through the gradient around its peak
+     */
+    private double refine(int peak) {
+        double offset = 0;
+        if (peak > 0 && peak < WIDTH - 1) {
+            int a = gradient[peak - 1], b = gradient[peak], c = gradient[peak + 1];
+            int curvature = a - 2 * b + c;
+            if (curvature != 0)
+                offset = Math.max(-0.5, Math.min(0.5, 0.5 * (a - c) / curvature));
+        }
+        // the gradient at i is centred on the pixel i, i.e. at i + 0.5
+        return peak + offset + 0.5;
+    }
+
+
+    /**
+     * writes the line detected in every frame of a capture, as CSV : the
+     * frame, its timestamp (empty if the capture has none), the left and right
+     * edges and the centre of the line (empty if no line was found), and the
+     * confidence.
+     *
+     * @param capture  the capture
+     * @param detector the detector to use
+     * @param out      where to write
+     * @throws IOException
+     */
+    public static void export(Capture capture, LineDetector detector, Writer out) throws IOException {
+        int[] pixels = new int[WIDTH];
+        Line line = new Line();
+        StringBuilder row = new StringBuilder();
+
+        out.write("frame,timestamp,left,right,centre,confidence\n");
+        for (int i = 0; i < capture.getNbrOfFrames(); i++) {
+            capture.readFrame(i, pixels);
+            row.setLength(0);
+            row.append(i).append(',');
+            if (capture.hasTimestamps())
+                row.append(capture.getTimestamp(i));
+            row.append(',');
+            if (detector.detect(pixels, line)) {
+                appendFixed(row, line.left).append(',');
+                appendFixed(row, line.right).append(',');
+                appendFixed(row, line.centre).append(',');
+                appendFixed(row, line.confidence);
+            } else {
+                row.append(",,,0");
+            }
+            row.append('\n');
+            out.append(row);
+        }
+    }
+
+
+    /**
+     * appends a positive number with 3 decimals
+     */
+    private static StringBuilder appendFixed(StringBuilder row, double value) {
+        long thousandths = Math.round(value * 1000);
+        row.append(thousandths / 1000).append('.');
+        long decimals = thousandths % 1000;
+        if (decimals < 100)
+            row.append('0');
+        if (decimals < 10)
+            row.append('0');
+        return row.append(decimals);
+    }
+
+}
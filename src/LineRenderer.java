@@ -0,0 +1,125 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+
+/**
+ * Draws a frame of the camera : a line of 102 gray "pixels", and optionally
+ * their values as text, in three rows (LEFT, MIDDLE, RIGHT), and the line
+ * detected in the frame (see {@link LineDetector}).
+ * <p/>
+ * The gray levels are written as raw bytes into an image one pixel high,
+ * whose color model maps each level to the same gray as
+ * <code>new Color(v, v, v)</code>. The image is then scaled to the size of
+ * the pixels with a single {@link Graphics#drawImage} call. The text rows are
+ * only rebuilt when the values change. Drawing a frame thus costs the same
+ * for any frame, and allocates nothing.
+ */
+public class LineRenderer {
+
+    private static final String[] SEGMENT_NAMES = {"LEFT:      ", "MIDDLE:  ", "RIGHT:    "};
+    private static final int SEGMENT_WIDTH = Capture.FRAME_WIDTH / 3;
+    private static final Color EDGE_COLOR = new Color(30, 90, 255);
+    private static final Color CENTRE_COLOR = new Color(255, 40, 40);
+
+    private final BufferedImage image;
+    private final byte[] gray; // the pixels of the image
+    private final int[] values = new int[Capture.FRAME_WIDTH]; // the values displayed
+    private final TextRow[] rows = new TextRow[3];
+    private boolean rowsValid = false;
+
+
+    public LineRenderer() {
+        byte[] levels = new byte[256];
+        for (int i = 0; i < levels.length; i++)
+            levels[i] = (byte) i;
+
+        this.image = new BufferedImage(Capture.FRAME_WIDTH, 1, BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(8, 256, levels, levels, levels));
+        this.gray = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = new TextRow(SEGMENT_NAMES[i].length() + 5 * SEGMENT_WIDTH);
+    }
+
+
+    /**
+     * sets the frame to draw.
+     *
+     * @param pixels the 102 values of the frame, between 0 and 255
+     */
+    public void setPixels(int[] pixels) {
+        for (int i = 0; i < Capture.FRAME_WIDTH; i++) {
+            int value = pixels[i];
+            if (value != values[i]) {
+                values[i] = value;
+                gray[i] = (byte) value;
+                rowsValid = false;
+            }
+        }
+    }
+
+
+    /**
+     * draws the pixels.
+     *
+     * @param g           the graphics to draw with
+     * @param x           the left of the first pixel
+     * @param y           the top of the pixels
+     * @param pixelWidth  the width of one pixel
+     * @param pixelHeight the height of the pixels
+     */
+    public void drawPixels(Graphics g, int x, int y, int pixelWidth, int pixelHeight) {
+        g.drawImage(image, x, y, Capture.FRAME_WIDTH * pixelWidth, pixelHeight, null);
+    }
+
+
+    /**
+     * draws a line detected in the frame over the pixels : a frame around the
+     * line, from one edge to the other, and its centre. Draws nothing if no
+     * line was found.
+     *
+     * @param g           the graphics to draw with
+     * @param line        the line detected
+     * @param x           the left of the first pixel
+     * @param y           the top of the pixels
+     * @param pixelWidth  the width of one pixel
+     * @param pixelHeight the height of the pixels
+     */
+    public void drawLine(Graphics g, LineDetector.Line line, int x, int y, int pixelWidth, int pixelHeight) {
+        if (!line.isFound())
+            return;
+
+        int left = x + (int) Math.round(line.left * pixelWidth);
+        int right = x + (int) Math.round(line.right * pixelWidth) - 1;
+        int centre = x + (int) Math.round(line.centre * pixelWidth);
+        g.setColor(EDGE_COLOR);
+        g.drawRect(left, y, Math.max(0, right - left), pixelHeight - 1);
+        g.setColor(CENTRE_COLOR);
+        g.fillRect(centre - 1, y, 3, pixelHeight);
+    }
+
+
+    /**
+     * draws the values of the pixels, as three rows of text. Each value is
+     * written with three digits, so that the rows are aligned.
+     *
+     * @param g           the graphics to draw with
+     * @param x           the left of the rows
+     * @param y           the baseline of the first row
+     * @param lineSpacing the distance between the baselines of two rows
+     */
+    public void drawValues(Graphics g, int x, int y, int lineSpacing) {
+        if (!rowsValid) {
+            for (int r = 0; r < rows.length; r++) {
+                rows[r].clear().append(SEGMENT_NAMES[r]);
+                for (int i = r * SEGMENT_WIDTH; i < (r + 1) * SEGMENT_WIDTH; i++)
+                    rows[r].append(values[i], 3).append("  ");
+            }
+            rowsValid = true;
+        }
+
+        for (int r = 0; r < rows.length; r++)
+            rows[r].draw(g, x, y + r * lineSpacing);
+    }
+
+}
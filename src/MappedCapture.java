@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A text capture file, mapped in memory. Each line of the file holds the 102
+ * values of a frame, separated by spaces, possibly preceded by the timestamp
+ * and the sequence number of the frame (see {@link PixelParser}). The capture
+ * has timestamps if its first line has one.
+ * <p/>
+ * Opening the capture costs one sequential scan of the file, which counts the
+ * frames and records where each of them starts (or none at all, when an up to
+ * date index is found next to the file, see {@link CaptureIndex}). Then, the
+ * frames are parsed straight from the mapped bytes, in any order, without
+ * touching the filesystem nor copying the line anywhere.
+ * <p/>
+ * The scan may also be done in the background, for the capture to be read as
+ * soon as it is opened : the number of frames then grows until the whole file
+ * is indexed.
+ */
+public class MappedCapture implements Capture {
+
+    private final MappedFile file;
+    private final CaptureIndex index;
+    private final AtomicLong malformedCount = new AtomicLong();
+
+    // one parser per thread reading the capture
+    private final ThreadLocal<PixelParser> parsers = new ThreadLocal<PixelParser>() {
+        @Override
+        protected PixelParser initialValue() {
+            return new PixelParser(new int[FRAME_WIDTH]);
+        }
+    };
+
+
+    /**
+     * maps the file and indexes its frames.
+     *
+     * @param filepath the capture file
+     * @throws IOException
+     */
+    public MappedCapture(String filepath) throws IOException {
+        this(filepath, false);
+    }
+
+
+    /**
+     * maps the file and indexes its frames.
+     *
+     * @param filepath     the capture file
+     * @param inBackground if true, returns right away, and indexes the frames
+     *                     in the background
+     * @throws IOException
+     */
+    public MappedCapture(String filepath, boolean inBackground) throws IOException {
+        this.file = new MappedFile(filepath);
+        this.index = inBackground ? CaptureIndex.openInBackground(file) : CaptureIndex.open(file);
+    }
+
+
+    /**
+     * stops indexing the file, if it is indexed in the background, and unmaps
+     * it.
+     */
+    @Override
+    public void close() {
+        index.stop();
+        file.close();
+    }
+
+
+    /**
+     * @return true once all the frames are indexed, i.e. once the number of
+     * frames is final
+     */
+    public boolean isIndexed() {
+        return index.isComplete();
+    }
+
+
+    /**
+     * @return the part of the file indexed so far, between 0 and 1
+     */
+    public double getIndexingProgress() {
+        return index.getProgress();
+    }
+
+
+    @Override
+    public int getNbrOfFrames() {
+        return index.getNbrOfLines();
+    }
+
+
+    /**
+     * parses a frame from the mapped bytes. Values which are missing from the
+     * line leave the corresponding pixels unchanged.
+     */
+    @Override
+    public void readFrame(int frameNbr, int[] pixels) {
+        long start = index.getStart(frameNbr);
+        PixelParser parser = parsers.get();
+        long malformed = parser.getMalformedCount();
+
+        parser.reset();
+        parser.setPixels(pixels);
+        if (parser.parse(file, start, start + index.getLength(frameNbr)) < 0) {
+            parser.endOfInput(); // last line, without a terminating new line
+        }
+
+        if (parser.getMalformedCount() != malformed) {
+            malformedCount.addAndGet(parser.getMalformedCount() - malformed);
+        }
+    }
+
+
+    /**
+     * @return the number of malformed values met in the frames read so far
+     */
+    public long getMalformedCount() {
+        return malformedCount.get();
+    }
+
+
+    @Override
+    public boolean hasTimestamps() {
+        return getNbrOfFrames() > 0 && getTimestamp(0) >= 0;
+    }
+
+
+    /**
+     * reads the timestamp of a frame, without parsing its values.
+     */
+    @Override
+    public long getTimestamp(int frameNbr) {
+        long position = index.getStart(frameNbr);
+        long end = position + index.getLength(frameNbr);
+        // the prefixes come first : '@' for the timestamp, '#' for the
+        // sequence number
+        while (position < end) {
+            byte c = file.get(position++);
+            if (c == '@' || c == '#') {
+                long value = -1;
+                byte digit;
+                while (position < end && (digit = file.get(position)) >= '0' && digit <= '9') {
+                    value = Math.max(0, value) * 10 + (digit - '0');
+                    position++;
+                }
+                if (c == '@')
+                    return value;
+            } else if (c != ' ' && c != '\t') {
+                return -1; // the values start
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,142 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file mapped in memory, read only. A single {@link MappedByteBuffer} cannot
+ * be bigger than 2 GB, so the file is mapped as a sequence of regions of
+ * 1 GB : this class hides these regions and lets the bytes be accessed by
+ * their position in the file.
+ * <p/>
+ * All the accesses are absolute, which means the same instance can be read by
+ * several threads at the same time.
+ * <p/>
+ * Closing the file unmaps it right away when the JVM allows it, instead of
+ * when the garbage collector gets to the mappings, which may be never : the
+ * file must not be read anymore, by any thread.
+ */
+public class MappedFile implements Closeable {
+
+    static final int REGION_SHIFT = 30; // regions of 1 GB
+    static final int REGION_SIZE = 1 << REGION_SHIFT;
+    private static final long REGION_MASK = REGION_SIZE - 1;
+
+    private final String filepath;
+    private final MappedByteBuffer[] regions;
+    private final long length;
+
+
+    /**
+     * maps the whole file in memory.
+     *
+     * @param filepath the file to map
+     * @throws IOException
+     */
+    public MappedFile(String filepath) throws IOException {
+        this.filepath = filepath;
+        RandomAccessFile file = new RandomAccessFile(filepath, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            this.length = channel.size();
+            int nbrOfRegions = (int) ((length + REGION_SIZE - 1) >>> REGION_SHIFT);
+            this.regions = new MappedByteBuffer[nbrOfRegions];
+            for (int i = 0; i < nbrOfRegions; i++) {
+                long start = (long) i << REGION_SHIFT;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(REGION_SIZE, length - start));
+            }
+        } finally {
+            // the mappings stay valid once the channel is closed
+            file.close();
+        }
+    }
+
+
+    /**
+     * @return the path of the mapped file
+     */
+    public String getFilepath() {
+        return filepath;
+    }
+
+
+    /**
+     * @return the length of the file, in bytes
+     */
+    public long length() {
+        return length;
+    }
+
+
+    /**
+     * @param position the position in the file
+     * @return the byte at this position
+     */
+    public byte get(long position) {
+        return regions[(int) (position >>> REGION_SHIFT)].get((int) (position & REGION_MASK));
+    }
+
+
+    /**
+     * unmaps the file. Reading it afterwards throws a NullPointerException.
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < regions.length; i++) {
+            MappedByteBuffer region = regions[i];
+            regions[i] = null;
+            if (region != null)
+                unmap(region);
+        }
+    }
+
+
+    /**
+     * releases a mapping, with the cleaner of the buffer : through
+     * sun.misc.Unsafe since Java 9, directly before. When neither is
+     * accessible, the mapping is left to the garbage collector.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                // Java 7 and 8
+                Method getCleaner = buffer.getClass().getMethod("cleaner");
+                getCleaner.setAccessible(true);
+                Object cleaner = getCleaner.invoke(buffer);
+                if (cleaner != null)
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the garbage collector
+        }
+    }
+
+
+    /**
+     * @return the number of regions the file is mapped with
+     */
+    int getNbrOfRegions() {
+        return regions.length;
+    }
+
+
+    /**
+     * @param i the number of the region
+     * @return the region, to be read with absolute accesses only
+     */
+    MappedByteBuffer getRegion(int i) {
+        return regions[i];
+    }
+
+}
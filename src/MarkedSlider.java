@@ -0,0 +1,95 @@
+import javax.swing.*;
+import javax.swing.plaf.basic.BasicSliderUI;
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * A horizontal slider over the frames of a capture, with marks on some of
+ * them, such as the results of a search (see {@link FrameSearch}).
+ * <p/>
+ * The marks are drawn per column of pixels, not per frame : a column is
+ * marked if a marked frame falls on it, so that millions of marks cost no
+ * more to draw than a few.
+ */
+public class MarkedSlider extends JSlider {
+
+    private static final Color MARK_COLOR = new Color(220, 30, 30);
+
+    private int[] marks = new int[0]; // sorted
+
+
+    /**
+     * @param max   the last frame
+     * @param value the current frame
+     */
+    public MarkedSlider(int max, int value) {
+        super(JSlider.HORIZONTAL, 0, max, value);
+    }
+
+
+    /**
+     * marks frames.
+     *
+     * @param frames the frames to mark, sorted
+     */
+    public void setMarks(int[] frames) {
+        this.marks = frames;
+        repaint();
+    }
+
+
+    /**
+     * @return the first marked frame after the given one, or -1 if there is
+     * none
+     */
+    public int getNextMark(int frame) {
+        int index = Arrays.binarySearch(marks, frame + 1);
+        if (index < 0)
+            index = -index - 1;
+        return index < marks.length ? marks[index] : -1;
+    }
+
+
+    /**
+     * @return the last marked frame before the given one, or -1 if there is
+     * none
+     */
+    public int getPreviousMark(int frame) {
+        int index = Arrays.binarySearch(marks, frame);
+        if (index < 0)
+            index = -index - 1;
+        return index > 0 ? marks[index - 1] : -1;
+    }
+
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (marks.length == 0 || !(getUI() instanceof BasicSliderUI))
+            return;
+
+        BasicSliderUI ui = (BasicSliderUI) getUI();
+        g.setColor(MARK_COLOR);
+        int top = getHeight() / 2 + 4;
+        // the columns of the track : the values are clamped out of it
+        int left = 0, right = getWidth() - 1;
+        while (left < right && ui.valueForXPosition(left + 1) == getMinimum())
+            left++;
+        while (right > left && ui.valueForXPosition(right - 1) == getMaximum())
+            right--;
+
+        // the frames shown by each column : from the value of its left edge
+        // to the value of the next column
+        int from = ui.valueForXPosition(left);
+        for (int x = left; x <= right; x++) {
+            int to = ui.valueForXPosition(x + 1);
+            int index = Arrays.binarySearch(marks, from);
+            if (index < 0)
+                index = -index - 1;
+            if (index < marks.length && marks[index] <= Math.max(from, to - 1))
+                g.drawLine(x, top, x, getHeight() - 1);
+            from = Math.max(from, to);
+        }
+    }
+
+}
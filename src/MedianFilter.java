@@ -0,0 +1,84 @@
+/**
+ * Replaces each pixel by the median of its values over the last frames,
+ * which removes the isolated spikes of the sensor without blurring the
+ * edges.
+ * <p/>
+ * The last values of each pixel are kept sorted : a new frame replaces the
+ * oldest value of each pixel by the new one, and moves it to its place, in a
+ * number of steps proportional to the size of the window at most, instead of
+ * sorting it again.
+ */
+public class MedianFilter implements FrameFilter {
+
+    private static final int WIDTH = Capture.FRAME_WIDTH;
+
+    private final int size; // of the window
+    private final int[] history; // history[frame * WIDTH + pixel], a ring of the last frames
+    private final int[] sorted; // sorted[pixel * size + i], the values of the window of each pixel, sorted
+    private int oldest = 0; // the frame of the history replaced next
+    private int count = 0; // the number of frames in the window
+
+
+    /**
+     * @param size the number of frames the median is taken over, odd
+     */
+    public MedianFilter(int size) {
+        if (size < 1 || size % 2 == 0)
+            throw new IllegalArgumentException("the window of a median must be odd : " + size);
+        this.size = size;
+        this.history = new int[size * WIDTH];
+        this.sorted = new int[WIDTH * size];
+    }
+
+
+    @Override
+    public void filter(int[] pixels) {
+        int n = size, frame = oldest * WIDTH;
+        boolean full = count == n;
+        for (int i = 0; i < WIDTH; i++) {
+            int value = pixels[i], start = i * n;
+            int end = start + count; // after the last value of the window
+            int j;
+            if (full) {
+                // replaces the oldest value by the new one, and moves it to
+                // its place
+                int old = history[frame + i];
+                j = start;
+                while (sorted[j] != old)
+                    j++;
+                if (value > old) {
+                    while (j + 1 < end && sorted[j + 1] < value) {
+                        sorted[j] = sorted[j + 1];
+                        j++;
+                    }
+                } else {
+                    while (j > start && sorted[j - 1] > value) {
+                        sorted[j] = sorted[j - 1];
+                        j--;
+                    }
+                }
+            } else {
+                // inserts the new value
+                j = end++;
+                while (j > start && sorted[j - 1] > value) {
+                    sorted[j] = sorted[j - 1];
+                    j--;
+                }
+            }
+            sorted[j] = value;
+            history[frame + i] = value;
+            pixels[i] = sorted[start + (end - start) / 2];
+        }
+
+        oldest = (oldest + 1) % n;
+        if (count < n)
+            count++;
+    }
+
+
+    @Override
+    public void reset() {
+        oldest = count = 0;
+    }
+
+}
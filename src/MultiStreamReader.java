@@ -0,0 +1,272 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads many camera streams at once, on a single thread : TCP connections
+ * (each robot connects to the same port) and files being written.
+ * <p/>
+ * The sockets are non-blocking and driven by a selector. Files cannot be
+ * registered with a selector, so when there are files the selector wakes up
+ * after a timeout to read what was appended to them : the timeout starts at
+ * 1 ms and doubles, up to 50 ms, as long as nothing is appended.
+ * <p/>
+ * Every stream has its own decoder, and its frames go to its own tile, which
+ * is created when the stream starts (see {@link Listener}). The frames are
+ * corrected with the calibration given by the {@value FlatField#PROPERTY}
+ * system property, if any, before the line is detected.
+ * <p/>
+ * A stream which cannot be decoded (a malformed header, for instance) or
+ * read is closed, and its tile shown disconnected : the other streams go on.
+ */
+public class MultiStreamReader implements Runnable {
+
+    private static final long MIN_WAIT = 1, MAX_WAIT = 50; // ms
+
+    /**
+     * gets told about new streams
+     */
+    public interface Listener {
+
+        /**
+         * called, by the reading thread, when a stream starts.
+         *
+         * @param name the name of the stream
+         * @return the tile which displays the stream
+         */
+        DashboardTile streamStarted(String name);
+    }
+
+
+    /**
+     * a stream being read
+     */
+    private static class Stream {
+        final FrameDecoder decoder = new FrameDecoder();
+        final DashboardTile tile;
+        FileChannel file; // null for a socket
+        long position = 0; // in the file
+
+        Stream(DashboardTile tile) {
+            this.tile = tile;
+        }
+    }
+
+
+    private final Selector selector;
+    private final Listener listener;
+    private final List<Stream> files = new ArrayList<Stream>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final LineDetector detector = new LineDetector(); // finds the line in every frame
+    private final FlatField calibration = FlatField.fromSystemProperty(); // null if none
+    private long wait = MIN_WAIT;
+    private volatile boolean closed = false;
+
+
+    /**
+     * @param listener gets told about the new streams
+     * @throws IOException
+     */
+    public MultiStreamReader(Listener listener) throws IOException {
+        this.selector = Selector.open();
+        this.listener = listener;
+    }
+
+
+    /**
+     * accepts the robots connecting to a TCP port. Must be called before the
+     * reader is started.
+     *
+     * @param port the port to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    public void listen(int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.socket().bind(new InetSocketAddress(port));
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+
+    /**
+     * follows a file. Must be called before the reader is started.
+     *
+     * @param filepath the file to follow
+     * @throws IOException if the file cannot be opened
+     */
+    public void follow(String filepath) throws IOException {
+        Stream stream = new Stream(listener.streamStarted(filepath));
+        stream.file = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ);
+        files.add(stream);
+    }
+
+
+    @Override
+    public void run() {
+        try {
+            while (!closed) {
+                if (files.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.select(wait);
+                }
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                    } else if (key.isReadable()) {
+                        receive(key);
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                boolean appended = false;
+                for (Iterator<Stream> i = files.iterator(); i.hasNext(); ) {
+                    Stream stream = i.next();
+                    try {
+                        appended |= readFile(stream);
+                    } catch (IOException e) {
+                        // only this file stops being followed
+                        i.remove();
+                        drop(stream, stream.file, e);
+                    }
+                }
+                wait = appended ? MIN_WAIT : Math.min(wait * 2, MAX_WAIT);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        Stream stream = new Stream(listener.streamStarted(
+                channel.socket().getRemoteSocketAddress().toString()));
+        channel.register(selector, SelectionKey.OP_READ, stream);
+    }
+
+
+    private void receive(SelectionKey key) throws IOException {
+        Stream stream = (Stream) key.attachment();
+        buffer.clear();
+        int read;
+        try {
+            read = ((SocketChannel) key.channel()).read(buffer);
+        } catch (IOException e) {
+            read = -1; // connection reset
+        }
+        if (read < 0) {
+            key.cancel();
+            key.channel().close();
+            stream.tile.disconnected();
+            return;
+        }
+        try {
+            decode(stream, read);
+        } catch (IOException e) {
+            // malformed : only this connection is closed
+            key.cancel();
+            drop(stream, key.channel(), e);
+        }
+    }
+
+
+    /**
+     * stops reading a stream which cannot be decoded, or read, and closes it :
+     * the other streams go on.
+     */
+    private void drop(Stream stream, Channel channel, IOException cause) {
+        System.err.println("stream dropped : " + cause.getMessage());
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        stream.tile.disconnected();
+    }
+
+
+    /**
+     * reads what was appended to a file since the last time.
+     *
+     * @return true if something was appended
+     */
+    private boolean readFile(Stream stream) throws IOException {
+        if (stream.file.size() < stream.position) {
+            // truncated : starts again
+            stream.position = 0;
+            stream.decoder.reset();
+        }
+
+        boolean appended = false;
+        int read;
+        buffer.clear();
+        while ((read = stream.file.read(buffer, stream.position)) > 0) {
+            stream.position += read;
+            decode(stream, read);
+            buffer.clear();
+            appended = true;
+        }
+        return appended;
+    }
+
+
+    /**
+     * decodes the bytes at the beginning of the buffer, and publishes the
+     * frames completed.
+     */
+    private void decode(Stream stream, int length) throws IOException {
+        byte[] bytes = buffer.array();
+        FrameExchange frames = stream.tile.getFrames();
+        int position = 0;
+        while (position < length
+                && (position = stream.decoder.decode(bytes, position, length, frames.getBackBuffer())) >= 0) {
+            Frame frame = frames.getBackBuffer();
+            if (calibration != null)
+                calibration.filter(frame.pixels);
+            detector.detect(frame.pixels, frame.line);
+            stream.tile.getTiming().frameReceived(frame);
+            frames.publish();
+        }
+    }
+
+
+    /**
+     * stops reading : the reading thread closes every stream and returns.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+
+    private void closeAll() {
+        try {
+            for (SelectionKey key : selector.keys())
+                key.channel().close();
+            selector.close();
+            for (Stream stream : files)
+                stream.file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,334 @@
+import java.util.Arrays;
+
+/**
+ * Summarises a whole capture at every scale : the minimum, mean and maximum
+ * value of each pixel over blocks of frames, {@value #BASE} frames at the
+ * first level, twice as many at each level above.
+ * <p/>
+ * The pyramid is built in the background, reading the capture once, from its
+ * first frame : a block is available as soon as its last frame is read, and
+ * the blocks above it as soon as they are complete. A capture still being
+ * indexed is followed as it grows.
+ * <p/>
+ * Summarising a range of frames (see {@link #summarize}) reads only the level
+ * whose blocks are about as large as the range : at most 3 blocks, whatever
+ * the length of the capture, once the pyramid is built. The pyramid takes
+ * about 10 bytes per frame.
+ */
+public class OverviewPyramid {
+
+    /**
+     * the number of frames summarised by a block of the first level
+     */
+    public static final int BASE = 64;
+
+    private static final int WIDTH = Capture.FRAME_WIDTH;
+    private static final int STRIDE = 3 * WIDTH; // a block : the minimums, the means, then the maximums
+    private static final int CHUNK_SIZE = 1024; // blocks allocated at once
+    private static final int MAX_LEVELS = 26; // BASE << 25 frames > Integer.MAX_VALUE
+    private static final long POLL_INTERVAL = 100; // ms, while waiting for the capture to grow
+
+
+    /**
+     * the blocks of a level, written by the building thread only. The chunks
+     * never move once allocated, so that the blocks can be read while others
+     * are added.
+     */
+    private static class Level {
+        volatile byte[][] chunks = new byte[16][];
+        volatile int nbrOfBlocks = 0;
+
+
+        /**
+         * @return the offset of a new block in its chunk, allocated if needed
+         */
+        int allocate(int block) {
+            int chunk = block / CHUNK_SIZE;
+            byte[][] c = chunks;
+            if (chunk == c.length) {
+                c = Arrays.copyOf(c, c.length * 2);
+            }
+            if (c[chunk] == null) {
+                c[chunk] = new byte[CHUNK_SIZE * STRIDE];
+            }
+            chunks = c;
+            return block % CHUNK_SIZE * STRIDE;
+        }
+
+
+        byte[] chunkOf(int block) {
+            return chunks[block / CHUNK_SIZE];
+        }
+    }
+
+
+    private final Capture capture;
+    private final Level[] levels = new Level[MAX_LEVELS];
+    private volatile int nbrOfFrames = 0; // frames read
+    private volatile boolean complete = false, closed = false;
+
+    // the block of the first level being read
+    private final int[] min = new int[WIDTH], max = new int[WIDTH], sum = new int[WIDTH];
+    private int count = 0;
+
+
+    /**
+     * @param capture the capture to summarise, whose readFrame method must
+     *                support concurrent calls
+     */
+    public OverviewPyramid(Capture capture) {
+        this.capture = capture;
+        for (int i = 0; i < levels.length; i++)
+            levels[i] = new Level();
+    }
+
+
+    /**
+     * starts building the pyramid, in the background.
+     */
+    public void start() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                build();
+            }
+        }, "overview");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+
+    private void build() {
+        int[] pixels = new int[WIDTH];
+        try {
+            while (!closed) {
+                boolean growing = isGrowing();
+                int available = capture.getNbrOfFrames();
+                int frameNbr = nbrOfFrames;
+                if (frameNbr == available) {
+                    if (!growing)
+                        break;
+                    Thread.sleep(POLL_INTERVAL);
+                    continue;
+                }
+                for (; frameNbr < available && !closed; frameNbr++) {
+                    capture.readFrame(frameNbr, pixels);
+                    add(pixels);
+                    nbrOfFrames = frameNbr + 1;
+                }
+            }
+            if (!closed)
+                finish();
+        } catch (InterruptedException e) {
+            // stops building
+        } finally {
+            complete = true;
+        }
+    }
+
+
+    /**
+     * @return true if more frames may be appended to the capture
+     */
+    private boolean isGrowing() {
+        return capture instanceof MappedCapture && !((MappedCapture) capture).isIndexed();
+    }
+
+
+    /**
+     * adds a frame to the block of the first level being read
+     */
+    private void add(int[] pixels) {
+        if (count == 0) {
+            for (int i = 0; i < WIDTH; i++) {
+                min[i] = max[i] = sum[i] = pixels[i];
+            }
+        } else {
+            for (int i = 0; i < WIDTH; i++) {
+                int v = pixels[i];
+                min[i] = Math.min(min[i], v);
+                max[i] = Math.max(max[i], v);
+                sum[i] += v;
+            }
+        }
+        if (++count == BASE)
+            flush();
+    }
+
+
+    /**
+     * adds the block being read to the first level, and the blocks it
+     * completes to the levels above
+     */
+    private void flush() {
+        Level level = levels[0];
+        int block = level.nbrOfBlocks;
+        int offset = level.allocate(block);
+        byte[] chunk = level.chunkOf(block);
+        for (int i = 0; i < WIDTH; i++) {
+            chunk[offset + i] = (byte) min[i];
+            chunk[offset + WIDTH + i] = (byte) ((sum[i] + count / 2) / count);
+            chunk[offset + 2 * WIDTH + i] = (byte) max[i];
+        }
+        count = 0;
+        level.nbrOfBlocks = block + 1;
+
+        for (int k = 1; k < levels.length && (block & 1) == 1; k++) {
+            merge(k, block - 1, block);
+            block >>= 1;
+        }
+    }
+
+
+    /**
+     * adds a block to a level, from one or two blocks of the level below
+     */
+    private void merge(int k, int first, int second) {
+        Level below = levels[k - 1], level = levels[k];
+        int block = level.nbrOfBlocks;
+        int offset = level.allocate(block);
+        byte[] chunk = level.chunkOf(block);
+        byte[] a = below.chunkOf(first), b = below.chunkOf(second);
+        int offsetA = first % CHUNK_SIZE * STRIDE, offsetB = second % CHUNK_SIZE * STRIDE;
+        // the last block of a level may be shorter
+        int weightA = getNbrOfFramesIn(k - 1, first), weightB = second == first ? 0 : getNbrOfFramesIn(k - 1, second);
+        int weight = weightA + weightB;
+        for (int i = 0; i < WIDTH; i++) {
+            chunk[offset + i] = (byte) Math.min(a[offsetA + i] & 0xFF, b[offsetB + i] & 0xFF);
+            chunk[offset + WIDTH + i] = (byte) (((a[offsetA + WIDTH + i] & 0xFF) * (long) weightA
+                    + (b[offsetB + WIDTH + i] & 0xFF) * (long) weightB + weight / 2) / weight);
+            chunk[offset + 2 * WIDTH + i] = (byte) Math.max(a[offsetA + 2 * WIDTH + i] & 0xFF,
+                    b[offsetB + 2 * WIDTH + i] & 0xFF);
+        }
+        level.nbrOfBlocks = block + 1;
+    }
+
+
+    /**
+     * @return the number of frames summarised by a block : BASE &lt;&lt; k,
+     * but for the last block of a level
+     */
+    private int getNbrOfFramesIn(int k, int block) {
+        long size = (long) BASE << k;
+        return (int) Math.max(0, Math.min(size, nbrOfFrames - block * size));
+    }
+
+
+    /**
+     * summarises the last frames, once the capture is read : the last block
+     * of the first level may be shorter, and the last block of each level
+     * above may come from a single block.
+     */
+    private void finish() {
+        if (count > 0)
+            flush();
+        // the blocks added to a level by the level below may complete a pair
+        for (int k = 1; k < levels.length && levels[k - 1].nbrOfBlocks > 1; k++) {
+            int below = levels[k - 1].nbrOfBlocks;
+            int block = levels[k].nbrOfBlocks;
+            if (block < (below + 1) / 2)
+                merge(k, 2 * block, Math.min(2 * block + 1, below - 1));
+        }
+    }
+
+
+    /**
+     * stops building the pyramid : the blocks built so far stay available.
+     */
+    public void close() {
+        closed = true;
+    }
+
+
+    /**
+     * @return the number of frames read so far
+     */
+    public int getNbrOfFrames() {
+        return nbrOfFrames;
+    }
+
+
+    /**
+     * @return the number of frames summarised so far : the frames whose block
+     * is complete
+     */
+    public int getNbrOfSummarisedFrames() {
+        return complete ? nbrOfFrames : Math.min(nbrOfFrames, levels[0].nbrOfBlocks * BASE);
+    }
+
+
+    /**
+     * @return true once the whole capture is summarised, or the building
+     * stopped
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+
+    /**
+     * summarises a range of frames, from the level whose blocks are the
+     * largest not exceeding the range : the blocks overlapping the range are
+     * combined, so that the range is widened to their bounds. While the
+     * pyramid is built, a range beyond the blocks of that level is read from
+     * the level below.
+     *
+     * @param from the first frame of the range
+     * @param to   the frame after the last one
+     * @param mins receives the minimum of each pixel
+     * @param mean receives the mean of each pixel
+     * @param maxs receives the maximum of each pixel
+     * @return false if no frame of the range is summarised yet
+     */
+    public boolean summarize(int from, int to, int[] mins, int[] mean, int[] maxs) {
+        int k = 0;
+        while (k < levels.length - 1 && (long) BASE << (k + 1) <= to - from)
+            k++;
+        while (k > 0 && ((long) levels[k].nbrOfBlocks * BASE << k) <= from)
+            k--;
+        Level level = levels[k];
+        int nbrOfBlocks = level.nbrOfBlocks;
+        int first = (from / BASE) >> k, last = Math.min(((Math.max(from, to - 1)) / BASE) >> k, nbrOfBlocks - 1);
+        if (first > last)
+            return false;
+
+        if (first == last) {
+            byte[] chunk = level.chunkOf(first);
+            int offset = first % CHUNK_SIZE * STRIDE;
+            for (int i = 0; i < WIDTH; i++) {
+                mins[i] = chunk[offset + i] & 0xFF;
+                mean[i] = chunk[offset + WIDTH + i] & 0xFF;
+                maxs[i] = chunk[offset + 2 * WIDTH + i] & 0xFF;
+            }
+            return true;
+        }
+
+        // the means, weighed by the number of frames of their block
+        long weight = 0;
+        for (int block = first; block <= last; block++) {
+            byte[] chunk = level.chunkOf(block);
+            int offset = block % CHUNK_SIZE * STRIDE;
+            // in 1 / BASE of a block, so that the sums fit in an int
+            int w = (getNbrOfFramesIn(k, block) + (1 << k) - 1) >> k;
+            for (int i = 0; i < WIDTH; i++) {
+                int lo = chunk[offset + i] & 0xFF, m = (chunk[offset + WIDTH + i] & 0xFF) * w,
+                        hi = chunk[offset + 2 * WIDTH + i] & 0xFF;
+                if (block == first) {
+                    mins[i] = lo;
+                    mean[i] = m;
+                    maxs[i] = hi;
+                } else {
+                    mins[i] = Math.min(mins[i], lo);
+                    mean[i] += m;
+                    maxs[i] = Math.max(maxs[i], hi);
+                }
+            }
+            weight += w;
+        }
+        for (int i = 0; i < WIDTH; i++)
+            mean[i] = (int) ((mean[i] + weight / 2) / weight);
+        return true;
+    }
+
+}
@@ -0,0 +1,290 @@
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.Locale;
+
+/**
+ * Shows a whole capture at a glance, above the slider over its frames : time
+ * goes from left to right, and each row is a pixel of the camera, the LEFT
+ * array at the top. A column shows the mean (or the minimum, or the maximum)
+ * of each pixel over the frames it covers, read from an
+ * {@link OverviewPyramid} as it is built.
+ * <p/>
+ * Each column reads only the level of the pyramid whose blocks are about as
+ * large as the frames it covers, so that painting the strip costs the same
+ * for any length of capture, and the image is only computed again when the
+ * view changes, or when more of the capture is summarised.
+ * <p/>
+ * Clicking or dragging goes to a frame (it moves the slider), the wheel zooms
+ * in and out around the mouse, and a right click chooses what is shown.
+ */
+public class OverviewStrip extends JPanel {
+
+    /**
+     * what the columns show
+     */
+    public enum Mode {MIN, MEAN, MAX}
+
+    private static final Color CURSOR_COLOR = new Color(220, 30, 30);
+    private static final int REFRESH_INTERVAL = 250; // ms, while the pyramid is built
+    private static final double ZOOM_STEP = 1.5; // per notch of the wheel
+
+    private final OverviewPyramid pyramid;
+    private final JSlider slider;
+    private final Timer refreshTimer;
+    private Mode mode = Mode.MEAN;
+
+    // the frames shown, from the first to the one after the last, when zoomed
+    private boolean zoomed = false;
+    private long viewFrom, viewTo;
+
+    // the image of the columns, and what it was computed for
+    private BufferedImage image;
+    private byte[] rows; // the pixels of the image
+    private int nbrOfColumnsDrawn = 0;
+    private long imageFrom = -1, imageTo = -1, imageFrames = -1;
+    private Mode imageMode;
+
+    private final int[] mins = new int[Capture.FRAME_WIDTH], means = new int[Capture.FRAME_WIDTH],
+            maxs = new int[Capture.FRAME_WIDTH];
+
+
+    /**
+     * @param pyramid the summary of the capture, which may still be built
+     * @param slider  the slider over the frames of the capture : its value is
+     *                the frame marked on the strip, and its maximum the last
+     *                frame
+     * @param height  the preferred height of the strip
+     */
+    public OverviewStrip(OverviewPyramid pyramid, JSlider slider, int height) {
+        this.pyramid = pyramid;
+        this.slider = slider;
+        this.setPreferredSize(new Dimension(slider.getPreferredSize().width, height));
+        this.setToolTipText("click : go to the frame, wheel : zoom, right click : mean, min or max");
+
+        slider.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                follow(OverviewStrip.this.slider.getValue());
+                repaint();
+            }
+        });
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e))
+                    goTo(e.getX());
+            }
+
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e))
+                    goTo(e.getX());
+            }
+
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoom(e.getX(), Math.pow(ZOOM_STEP, e.getPreciseWheelRotation()));
+            }
+        };
+        this.addMouseListener(mouse);
+        this.addMouseMotionListener(mouse);
+        this.addMouseWheelListener(mouse);
+        this.setComponentPopupMenu(createMenu());
+
+        // shows the pyramid as it is built
+        this.refreshTimer = new Timer(REFRESH_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (OverviewStrip.this.pyramid.isComplete())
+                    refreshTimer.stop();
+                repaint();
+            }
+        });
+        this.refreshTimer.start();
+    }
+
+
+    private JPopupMenu createMenu() {
+        JPopupMenu menu = new JPopupMenu();
+        ButtonGroup group = new ButtonGroup();
+        for (final Mode m : Mode.values()) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(m.name().toLowerCase(Locale.ROOT), m == mode);
+            item.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    setMode(m);
+                }
+            });
+            group.add(item);
+            menu.add(item);
+        }
+        menu.addSeparator();
+        JMenuItem zoomOut = new JMenuItem("whole capture");
+        zoomOut.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                zoomed = false;
+                repaint();
+            }
+        });
+        menu.add(zoomOut);
+        return menu;
+    }
+
+
+    /**
+     * @param mode what the columns show
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
+        repaint();
+    }
+
+
+    /**
+     * @return the number of frames of the capture, as known by the slider
+     */
+    private long getNbrOfFrames() {
+        return slider.getMaximum() + 1L;
+    }
+
+
+    private long getViewFrom() {
+        return zoomed ? viewFrom : 0;
+    }
+
+
+    private long getViewTo() {
+        return zoomed ? viewTo : getNbrOfFrames();
+    }
+
+
+    /**
+     * @return the first frame covered by a column
+     */
+    private long frameAt(int x, long from, long to, int width) {
+        return from + (to - from) * x / width;
+    }
+
+
+    private void goTo(int x) {
+        if (getWidth() == 0)
+            return;
+        int x0 = Math.max(0, Math.min(getWidth() - 1, x));
+        slider.setValue((int) frameAt(x0, getViewFrom(), getViewTo(), getWidth()));
+    }
+
+
+    /**
+     * zooms around a column.
+     *
+     * @param x      the column which stays on the same frame
+     * @param factor the number of frames shown is multiplied by it
+     */
+    private void zoom(int x, double factor) {
+        long total = getNbrOfFrames();
+        int width = getWidth();
+        if (width == 0 || total <= width)
+            return;
+
+        long from = getViewFrom(), to = getViewTo();
+        long span = Math.max(width, Math.min(total, Math.round((to - from) * factor))); // 1 frame per column or more
+        long anchor = frameAt(x, from, to, width);
+        long newFrom = anchor - span * x / width;
+        newFrom = Math.max(0, Math.min(total - span, newFrom));
+
+        zoomed = span < total;
+        viewFrom = newFrom;
+        viewTo = newFrom + span;
+        repaint();
+    }
+
+
+    /**
+     * moves the view to a frame out of it, when zoomed
+     */
+    private void follow(int frameNbr) {
+        if (!zoomed || (frameNbr >= viewFrom && frameNbr < viewTo))
+            return;
+        long span = viewTo - viewFrom;
+        viewFrom = Math.max(0, Math.min(getNbrOfFrames() - span, frameNbr - span / 2));
+        viewTo = viewFrom + span;
+    }
+
+
+    /**
+     * computes the columns of the image again, if the view changed, or if
+     * more frames were summarised since
+     */
+    private void updateImage(int width, long from, long to) {
+        long frames = pyramid.getNbrOfSummarisedFrames();
+        if (image != null && image.getWidth() == width && from == imageFrom && to == imageTo
+                && frames == imageFrames && mode == imageMode)
+            return;
+
+        if (image == null || image.getWidth() != width) {
+            byte[] levels = new byte[256];
+            for (int i = 0; i < levels.length; i++)
+                levels[i] = (byte) i;
+            image = new BufferedImage(width, Capture.FRAME_WIDTH, BufferedImage.TYPE_BYTE_INDEXED,
+                    new IndexColorModel(8, 256, levels, levels, levels));
+            rows = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        }
+
+        int[] values = mode == Mode.MIN ? mins : mode == Mode.MAX ? maxs : means;
+        int x = 0;
+        for (; x < width; x++) {
+            long first = frameAt(x, from, to, width), next = Math.max(first + 1, frameAt(x + 1, from, to, width));
+            if (first >= frames || !pyramid.summarize((int) first, (int) Math.min(next, frames), mins, means, maxs))
+                break;
+            for (int i = 0; i < Capture.FRAME_WIDTH; i++)
+                rows[i * width + x] = (byte) values[i];
+        }
+        nbrOfColumnsDrawn = x;
+
+        imageFrom = from;
+        imageTo = to;
+        imageFrames = frames;
+        imageMode = mode;
+    }
+
+
+    @Override
+    public void paint(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        int width = getWidth(), height = getHeight();
+        long from = getViewFrom(), to = getViewTo();
+        if (width == 0 || to <= from)
+            return;
+
+        updateImage(width, from, to);
+        if (nbrOfColumnsDrawn > 0) {
+            g.drawImage(image, 0, 0, nbrOfColumnsDrawn, height,
+                    0, 0, nbrOfColumnsDrawn, Capture.FRAME_WIDTH, null);
+        }
+
+        // the current frame
+        int frameNbr = slider.getValue();
+        if (frameNbr >= from && frameNbr < to) {
+            int x = (int) ((frameNbr - from) * width / (to - from));
+            g.setColor(CURSOR_COLOR);
+            g.drawLine(x, 0, x, height - 1);
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reads all the frames of a capture using every core : the capture is split
+ * in chunks which are processed in parallel with fork/join, each chunk
+ * producing a partial result, then the partial results are merged.
+ * <p/>
+ * Binary captures and archives are split by ranges of frames. Text captures
+ * are split by ranges of bytes, without indexing them first : a chunk
+ * processes the lines which start inside its range, so the chunks stay
+ * aligned on lines even if their bounds are not.
+ * <p/>
+ * A scan of an opened capture can be cancelled : the chunks stop reading at
+ * the next frame, and the chunks not started yet are not split any further.
+ */
+public class ParallelScan {
+
+    private static final long TEXT_CHUNK_SIZE = 4 << 20; // bytes
+    private static final int FRAMES_CHUNK_SIZE = 1 << 15;
+
+
+    /**
+     * what to do with the frames, and how to merge the partial results.
+     *
+     * @param <R> the type of the result
+     */
+    public interface Processor<R> {
+
+        /**
+         * @return a new, empty, partial result
+         */
+        R newResult();
+
+
+        /**
+         * processes one frame.
+         *
+         * @param result   the partial result of the chunk holding the frame
+         * @param frameNbr the number of the frame, or -1 if it is unknown
+         *                 (text captures scanned without their index)
+         * @param pixels   the 102 values of the frame. The array is reused for
+         *                 the next frame.
+         */
+        void process(R result, int frameNbr, int[] pixels);
+
+
+        /**
+         * merges two partial results.
+         *
+         * @param result the result to update
+         * @param other  the result to merge into it
+         */
+        void merge(R result, R other);
+    }
+
+
+    private ParallelScan() {
+    }
+
+
+    /**
+     * scans a whole capture file.
+     *
+     * @param filepath  the capture file, in any format
+     * @param processor what to do with the frames
+     * @param pool      the threads to use
+     * @return the merged result
+     * @throws IOException
+     */
+    public static <R> R scan(String filepath, Processor<R> processor, ForkJoinPool pool)
+            throws IOException {
+        if (!Captures.isText(filepath)) {
+            Capture capture = Captures.open(filepath);
+            try {
+                return scan(capture, 0, capture.getNbrOfFrames(), processor, pool);
+            } finally {
+                capture.close();
+            }
+        }
+
+        MappedFile file = new MappedFile(filepath);
+        try {
+            return pool.invoke(new TextTask<R>(file, 0, file.length(), processor));
+        } finally {
+            file.close();
+        }
+    }
+
+
+    /**
+     * scans a range of frames of an opened capture. The frame numbers are
+     * given to the processor.
+     *
+     * @param capture   the capture, whose readFrame method must support
+     *                  concurrent calls
+     * @param from      the first frame to scan
+     * @param to        the frame after the last frame to scan
+     * @param processor what to do with the frames
+     * @param pool      the threads to use
+     * @return the merged result
+     */
+    public static <R> R scan(Capture capture, int from, int to, Processor<R> processor,
+                             ForkJoinPool pool) {
+        return scan(capture, from, to, processor, pool, null);
+    }
+
+
+    /**
+     * scans a range of frames of an opened capture, until it is cancelled.
+     * The frame numbers are given to the processor.
+     *
+     * @param capture   the capture, whose readFrame method must support
+     *                  concurrent calls
+     * @param from      the first frame to scan
+     * @param to        the frame after the last frame to scan
+     * @param processor what to do with the frames
+     * @param pool      the threads to use
+     * @param cancelled set to true to stop the scan, or null if it cannot be
+     *                  cancelled
+     * @return the merged result, of the frames scanned before the scan was
+     * cancelled, if it was
+     */
+    public static <R> R scan(Capture capture, int from, int to, Processor<R> processor,
+                             ForkJoinPool pool, AtomicBoolean cancelled) {
+        return pool.invoke(new FramesTask<R>(capture, from, to, processor,
+                cancelled != null ? cancelled : new AtomicBoolean()));
+    }
+
+
+    /**
+     * processes the lines starting between two positions of a text capture.
+     */
+    private static class TextTask<R> extends RecursiveTask<R> {
+
+        private final MappedFile file;
+        private final long from, to;
+        private final Processor<R> processor;
+
+
+        TextTask(MappedFile file, long from, long to, Processor<R> processor) {
+            this.file = file;
+            this.from = from;
+            this.to = to;
+            this.processor = processor;
+        }
+
+
+        @Override
+        protected R compute() {
+            if (to - from > TEXT_CHUNK_SIZE) {
+                long middle = from + (to - from) / 2;
+                TextTask<R> second = new TextTask<R>(file, middle, to, processor);
+                second.fork();
+                R result = new TextTask<R>(file, from, middle, processor).compute();
+                processor.merge(result, second.join());
+                return result;
+            }
+
+            R result = processor.newResult();
+            int[] pixels = new int[Capture.FRAME_WIDTH];
+            PixelParser parser = new PixelParser(pixels);
+            long length = file.length();
+
+            // the line crossing the start of the range belongs to the
+            // previous chunk
+            long position = from;
+            if (position > 0 && file.get(position - 1) != '\n') {
+                while (position < length && file.get(position) != '\n')
+                    position++;
+                position++;
+            }
+
+            while (position < to && position < length) {
+                long end = position;
+                while (end < length && file.get(end) != '\n')
+                    end++;
+
+                parser.reset();
+                if (parser.parse(file, position, Math.min(end + 1, length)) >= 0
+                        || parser.endOfInput()) {
+                    processor.process(result, -1, pixels);
+                }
+                position = end + 1;
+            }
+            return result;
+        }
+    }
+
+
+    /**
+     * processes a range of frames of a capture.
+     */
+    private static class FramesTask<R> extends RecursiveTask<R> {
+
+        private final Capture capture;
+        private final int from, to;
+        private final Processor<R> processor;
+        private final AtomicBoolean cancelled;
+
+
+        FramesTask(Capture capture, int from, int to, Processor<R> processor, AtomicBoolean cancelled) {
+            this.capture = capture;
+            this.from = from;
+            this.to = to;
+            this.processor = processor;
+            this.cancelled = cancelled;
+        }
+
+
+        @Override
+        protected R compute() {
+            if (to - from > FRAMES_CHUNK_SIZE && !cancelled.get()) {
+                int middle = from + (to - from) / 2;
+                FramesTask<R> second = new FramesTask<R>(capture, middle, to, processor, cancelled);
+                second.fork();
+                R result = new FramesTask<R>(capture, from, middle, processor, cancelled).compute();
+                processor.merge(result, second.join());
+                return result;
+            }
+
+            R result = processor.newResult();
+            int[] pixels = new int[Capture.FRAME_WIDTH];
+            for (int i = from; i < to && !cancelled.get(); i++) {
+                capture.readFrame(i, pixels);
+                processor.process(result, i, pixels);
+            }
+            return result;
+        }
+    }
+
+}
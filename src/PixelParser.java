@@ -0,0 +1,213 @@
+/**
+ * Turns the text format of the captures (lines of 102 values separated by
+ * spaces) into pixel values, without allocating anything : the values are
+ * written straight into a preallocated array.
+ * <p/>
+ * The parser keeps its state between two calls, so a line may be fed in
+ * several pieces, one character or one buffer at a time.
+ * <p/>
+ * A line may start with the time at which it was captured, in microseconds
+ * since the epoch, and with its sequence number in the stream, each of them
+ * optional : <code>@1355313600000000 #42 12 15 ...</code>. They are given by
+ * {@link #getTimestamp()} and {@link #getSequence()} once the line is
+ * complete.
+ * <p/>
+ * Malformed tokens (anything which is not a number between 0 and 255, or
+ * values in excess at the end of a line) are not reported one by one : they
+ * are counted, see {@link #getMalformedCount()}. A malformed token still takes
+ * its place in the line, so that the following values stay aligned, but leaves
+ * the corresponding pixel unchanged.
+ */
+public class PixelParser {
+
+    private int[] pixels; // the array receiving the values
+    private int index = 0; // index of the next value of the line
+    private long value = 0; // the value of the token being read
+    private long maxValue = 255; // above which the token is malformed
+    private boolean inToken = false, malformedToken = false, lineStarted = false;
+    private long malformedCount = 0;
+
+    // the prefix of the line : '@' (timestamp) or '#' (sequence number) while
+    // one is read, 0 otherwise
+    private int prefix = 0;
+    private long lineTimestamp = -1, lineSequence = -1; // of the line being parsed
+    private long timestamp = -1, sequence = -1; // of the last line completed
+
+
+    /**
+     * @param pixels the array receiving the values of each line
+     */
+    public PixelParser(int[] pixels) {
+        this.pixels = pixels;
+    }
+
+
+    /**
+     * changes the array receiving the values. The line being parsed, if any,
+     * continues in the new array.
+     *
+     * @param pixels the array receiving the values
+     */
+    public void setPixels(int[] pixels) {
+        this.pixels = pixels;
+    }
+
+
+    /**
+     * parses one character.
+     *
+     * @param c the character (or byte) read
+     * @return true if this character completed a (non empty) line : the pixels
+     * array then holds its values
+     */
+    public boolean parse(int c) {
+        if (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            if (value > maxValue)
+                malformedToken = true;
+            inToken = lineStarted = true;
+            return false;
+
+        } else if (c == ' ' || c == '\r' || c == '\t') {
+            endToken();
+            return false;
+
+        } else if (c == '\n') {
+            endToken();
+            boolean complete = lineStarted;
+            index = 0;
+            lineStarted = false;
+            timestamp = lineTimestamp;
+            sequence = lineSequence;
+            lineTimestamp = lineSequence = -1;
+            return complete;
+
+        } else if ((c == '@' || c == '#') && !inToken && index == 0) {
+            // a prefix, before the values
+            prefix = c;
+            maxValue = (Long.MAX_VALUE - 9) / 10;
+            lineStarted = true;
+            return false;
+
+        } else {
+            malformedToken = inToken = lineStarted = true;
+            return false;
+        }
+    }
+
+
+    /**
+     * parses bytes until the end of a line.
+     *
+     * @param buffer the bytes to parse
+     * @param offset the position of the first byte to parse
+     * @param limit  the position after the last byte to parse
+     * @return the position right after the end of the first line completed, or
+     * -1 if all the bytes were parsed without completing a line
+     */
+    public int parse(byte[] buffer, int offset, int limit) {
+        for (int i = offset; i < limit; i++) {
+            if (parse(buffer[i]))
+                return i + 1;
+        }
+        return -1;
+    }
+
+
+    /**
+     * parses the bytes of a file mapped in memory until the end of a line.
+     *
+     * @param file     the mapped file
+     * @param position the position of the first byte to parse
+     * @param limit    the position after the last byte to parse
+     * @return the position right after the end of the first line completed, or
+     * -1 if all the bytes were parsed without completing a line
+     */
+    public long parse(MappedFile file, long position, long limit) {
+        for (long i = position; i < limit; i++) {
+            if (parse(file.get(i)))
+                return i + 1;
+        }
+        return -1;
+    }
+
+
+    /**
+     * ends the input : completes the last line if it has no terminating new
+     * line.
+     *
+     * @return true if there was such a line : the pixels array then holds its
+     * values
+     */
+    public boolean endOfInput() {
+        return parse('\n');
+    }
+
+
+    /**
+     * forgets the line being parsed, if any.
+     */
+    public void reset() {
+        index = prefix = 0;
+        value = 0;
+        maxValue = 255;
+        inToken = malformedToken = lineStarted = false;
+        lineTimestamp = lineSequence = -1;
+    }
+
+
+    /**
+     * @return the number of malformed tokens met since this parser was created
+     */
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+
+
+    /**
+     * @return the time at which the last line completed was captured, in
+     * microseconds since the epoch, or -1 if it did not tell
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+
+    /**
+     * @return the sequence number of the last line completed, or -1 if it did
+     * not tell
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+
+    private void endToken() {
+        if (prefix != 0) {
+            if (malformedToken || !inToken) {
+                malformedCount++; // '@' or '#' alone
+            } else if (prefix == '@') {
+                lineTimestamp = value;
+            } else {
+                lineSequence = value;
+            }
+            prefix = 0;
+            maxValue = 255;
+            value = 0;
+            inToken = malformedToken = false;
+            return;
+        }
+        if (!inToken)
+            return;
+
+        if (malformedToken || index >= pixels.length) {
+            malformedCount++;
+        } else {
+            pixels[index] = (int) value;
+        }
+        index++;
+        value = 0;
+        inToken = malformedToken = false;
+    }
+
+}
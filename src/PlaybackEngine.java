@@ -0,0 +1,350 @@
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Plays a capture in real time, on its own thread : at any time, the frame to
+ * display is computed from the clock, as the frame played when playback
+ * started (or changed speed or direction) plus the time elapsed since then,
+ * so playback never drifts, whatever the time spent displaying the frames.
+ * <p/>
+ * If the capture has timestamps, the frames are displayed when their
+ * timestamps say, scaled by the speed. Otherwise, they are displayed at a
+ * fixed rate.
+ * <p/>
+ * The engine wakes up when the next frame is due, but never more than once
+ * per {@value #MIN_INTERVAL} nanoseconds : when the frames are due faster, or
+ * when displaying a frame takes longer than the frames last, the frames in
+ * between are skipped (and counted), instead of slowing playback down. At the
+ * end of the capture, playback starts again from the other end, as if the
+ * capture were repeated endlessly : looping does not drift either.
+ * <p/>
+ * Reading a timestamp may cost a lot (a chunk of an archive is decompressed,
+ * see {@link ArchiveCapture}) : the extent of the capture in time is only
+ * computed again when its number of frames changes, and the engine remembers
+ * when the frame displayed starts and ends, so that waking up before the next
+ * frame is due reads no timestamp at all.
+ * <p/>
+ * While playing, the listener is called by the thread of the engine, and only
+ * by it : {@link #pause()} returns once the frame being displayed, if any, is
+ * done, so the display can be handed back to another thread.
+ */
+public class PlaybackEngine {
+
+    /**
+     * gets told the frame to display
+     */
+    public interface Listener {
+
+        /**
+         * called by the thread of the engine when it is time to display
+         * another frame.
+         *
+         * @param frameNbr the frame to display
+         */
+        void frameReached(int frameNbr);
+    }
+
+
+    /**
+     * the slowest and fastest speeds
+     */
+    public static final double MIN_SPEED = 0.1, MAX_SPEED = 100;
+
+    private static final long MIN_INTERVAL = 500000; // ns
+    private static final long MAX_INTERVAL = 50000000; // ns
+
+    private final Capture capture;
+    private final double rate; // frames per second at speed 1, without timestamps
+    private final Listener listener;
+
+    private volatile boolean playing = false, closed = false;
+    private volatile double speed = 1;
+    private volatile int direction = 1; // 1 to play forwards, -1 backwards
+
+    // guards the position, and is held while a frame is displayed
+    private final ReentrantLock lock = new ReentrantLock();
+    private int current = 0; // the frame displayed
+    private int anchorFrame; // the frame displayed at anchorNanos
+    private long anchorNanos; // from System.nanoTime()
+    private long anchorMedia; // the timestamp of anchorFrame
+    private volatile long skipped = 0;
+
+    // the extent of the capture, for the number of frames it had
+    private int extentFrames = -1;
+    private boolean timestamps;
+    private long first, length; // the first timestamp, and the time until the capture loops
+
+    // when the frame boundsFrame starts and ends, in the time of the capture
+    private int boundsFrame = -1;
+    private long boundsStart, boundsEnd;
+
+    private final Thread thread;
+
+
+    /**
+     * starts the thread of the engine, paused.
+     *
+     * @param capture  the capture to play
+     * @param rate     the number of frames per second at speed 1, if the
+     *                 capture has no timestamps
+     * @param listener gets told the frames to display
+     */
+    public PlaybackEngine(Capture capture, double rate, Listener listener) {
+        this.capture = capture;
+        this.rate = rate;
+        this.listener = listener;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                play();
+            }
+        }, "playback");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * starts playing.
+     *
+     * @param fromFrame the frame displayed now, the one to play from
+     */
+    public void play(int fromFrame) {
+        lock.lock();
+        try {
+            current = fromFrame;
+            anchor(System.nanoTime());
+            playing = true;
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+    }
+
+
+    /**
+     * stops playing. Returns once the frame being displayed, if any, is done
+     * : the listener is not called anymore.
+     */
+    public void pause() {
+        playing = false;
+        lock.lock();
+        lock.unlock();
+    }
+
+
+    /**
+     * @return true while playing
+     */
+    public boolean isPlaying() {
+        return playing;
+    }
+
+
+    /**
+     * @param speed the speed, from {@value #MIN_SPEED} (ten times slower than
+     *              real time) to {@value #MAX_SPEED}
+     */
+    public void setSpeed(double speed) {
+        lock.lock();
+        try {
+            anchor(System.nanoTime());
+            this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+    }
+
+
+    /**
+     * @param reverse true to play backwards
+     */
+    public void setReverse(boolean reverse) {
+        lock.lock();
+        try {
+            anchor(System.nanoTime());
+            this.direction = reverse ? -1 : 1;
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+    }
+
+
+    /**
+     * @return the number of frames skipped so far, because they were due
+     * faster than they could be displayed
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+
+    /**
+     * stops the thread of the engine.
+     */
+    public void close() {
+        closed = true;
+        playing = false;
+        LockSupport.unpark(thread);
+    }
+
+
+    private void play() {
+        while (!closed) {
+            if (!playing) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            long wait;
+            lock.lock();
+            try {
+                wait = playing ? step(System.nanoTime()) : 0;
+            } finally {
+                lock.unlock();
+            }
+            if (wait > 0)
+                LockSupport.parkNanos(this, wait);
+        }
+    }
+
+
+    /**
+     * displays the frame due now, if it is not displayed already.
+     *
+     * @return the time to wait for the next frame, in nanoseconds
+     */
+    private long step(long now) {
+        int nbrOfFrames = capture.getNbrOfFrames();
+        if (nbrOfFrames == 0)
+            return MAX_INTERVAL;
+        if (nbrOfFrames != extentFrames)
+            measure(nbrOfFrames);
+
+        int target;
+        long wait;
+        if (timestamps) {
+            // the time in the capture, brought back into it when looping
+            long media = anchorMedia + (long) (direction * speed * (now - anchorNanos) / 1000);
+            media = first + modulo(media - first, length);
+            if (boundsFrame == current && media >= boundsStart && media < boundsEnd) {
+                target = current; // still due
+            } else {
+                target = Math.max(0, frameAt(media, nbrOfFrames));
+                bound(target, nbrOfFrames);
+            }
+            // forwards, the next frame is due when this one ends. Backwards,
+            // the previous one is due once the time is before this one's.
+            long due = direction > 0 ? boundsEnd : boundsStart - 1;
+            wait = (long) (Math.abs(due - media) * 1000 / speed);
+        } else {
+            double position = anchorFrame + direction * speed * rate * (now - anchorNanos) / 1e9;
+            long frame = (long) Math.floor(position);
+            double left = direction > 0 ? frame + 1 - position : position - frame;
+            target = (int) modulo(frame, nbrOfFrames);
+            wait = (long) (left / (speed * rate) * 1e9);
+        }
+
+        if (target != current) {
+            // the frames between the current one and the target, looping if
+            // needed
+            long jump = modulo(direction * ((long) target - current), nbrOfFrames);
+            skipped += Math.max(0, jump - 1);
+            current = target;
+            listener.frameReached(target);
+        }
+        return Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, wait));
+    }
+
+
+    /**
+     * computes the extent of the capture in time, for a number of frames :
+     * the last frame lasts as long as the average frame
+     */
+    private void measure(int nbrOfFrames) {
+        extentFrames = nbrOfFrames;
+        boundsFrame = -1; // the last frame may have changed
+        timestamps = capture.hasTimestamps();
+        if (timestamps) {
+            first = capture.getTimestamp(0);
+            long last = capture.getTimestamp(nbrOfFrames - 1);
+            length = last - first + Math.max(1, (last - first) / Math.max(1, nbrOfFrames - 1));
+        }
+    }
+
+
+    /**
+     * remembers when a frame starts and ends : at the timestamp of the next
+     * frame, or when the capture loops for the last frame
+     */
+    private void bound(int frameNbr, int nbrOfFrames) {
+        boundsFrame = frameNbr;
+        boundsStart = capture.getTimestamp(frameNbr);
+        boundsEnd = frameNbr + 1 < nbrOfFrames ? capture.getTimestamp(frameNbr + 1) : first + length;
+    }
+
+
+    private static long modulo(long value, long modulus) {
+        long rest = value % modulus;
+        return rest < 0 ? rest + modulus : rest;
+    }
+
+
+    /**
+     * the frame displayed at this time, and the clock, become the reference
+     * from which the next frames are computed.
+     */
+    private void anchor(long now) {
+        anchorFrame = current;
+        anchorNanos = now;
+        if (capture.hasTimestamps() && current < capture.getNbrOfFrames())
+            anchorMedia = capture.getTimestamp(current);
+    }
+
+
+    /**
+     * finds the last frame whose timestamp is not after the given time,
+     * searching from the current frame outwards, so that only the frames
+     * around it are read.
+     *
+     * @return the frame, or -1 if the time is before the first frame
+     */
+    private int frameAt(long media, int nbrOfFrames) {
+        int low, high; // timestamp(low) <= media < timestamp(high)
+        int from = Math.min(Math.max(current, 0), nbrOfFrames - 1);
+        if (capture.getTimestamp(from) <= media) {
+            low = from;
+            int step = 1;
+            high = from + step;
+            while (high < nbrOfFrames && capture.getTimestamp(high) <= media) {
+                low = high;
+                step <<= 1;
+                high = from + step;
+            }
+            high = Math.min(high, nbrOfFrames);
+        } else {
+            high = from;
+            int step = 1;
+            low = from - step;
+            while (low >= 0 && capture.getTimestamp(low) > media) {
+                high = low;
+                step <<= 1;
+                low = from - step;
+            }
+            low = Math.max(low, -1);
+        }
+
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (capture.getTimestamp(middle) <= media) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+}
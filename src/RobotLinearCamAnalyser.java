@@ -1,15 +1,16 @@
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class enables us to have a graphic representation of what the KJunior
@@ -30,7 +31,54 @@ import java.io.IOException;
  * <li>each value is separated by a space</li>
  * <li>the groups are not separated by a blank line, but only appended one after
  * another</li>
+ * <li>a line may start with the time at which the frame was captured, in
+ * microseconds since the epoch, prefixed by '@', and with its sequence number,
+ * prefixed by '#' : <code>@1355313600000000 #42 12 15 ...</code>. Both are
+ * optional. A capture whose first line has a timestamp plays at the pace it
+ * was recorded.</li>
  * </ul>
+ * The file may also be a binary capture (see {@link BinaryCapture}) or a
+ * compressed archive (see {@link ArchiveCapture}), which are detected
+ * automatically. Seeking in an archive only decompresses the chunk holding the
+ * frame.
+ * <p/>
+ * The frames around the current one are kept decoded in memory, and the
+ * frames about to be displayed are decoded in the background (see
+ * {@link FrameCache}) : moving the slider, stepping backwards and playing
+ * read them from memory.
+ * <p/>
+ * A text capture is indexed in the background : it plays as soon as it is
+ * opened, while the number of frames, and the range of the slider, grow until
+ * the whole file is indexed.
+ * <p/>
+ * The path may also be a directory, or a pattern such as
+ * <code>"runs/kjunior-*.kjc"</code> : the files are then played one after
+ * another, as one capture (see {@link CaptureTimeline}).
+ * <p/>
+ * Playback is driven by the clock, on its own thread (see
+ * {@link PlaybackEngine}) : it can be slowed down or sped up from 0.1x to
+ * 100x, and played backwards. A capture with timestamps plays at the pace it
+ * was recorded. When the display cannot keep up, frames are skipped instead
+ * of slowing playback down.
+ * <p/>
+ * The frames matching a query over their pixels, such as
+ * <code>mean MIDDLE &lt; 60</code>, can be searched using every core (see
+ * {@link FrameSearch}) : they are listed, and marked on the slider, as they
+ * are found.
+ * <p/>
+ * The line followed by the robot is detected in every frame displayed (see
+ * {@link LineDetector}) : its centre is shown with the frame number, and the
+ * "show line" button draws it over the pixels. <code>java LineDetector</code>
+ * exports it for a whole capture.
+ * <p/>
+ * The strip above the slider shows the whole capture at a glance (see
+ * {@link OverviewStrip}) : the mean value of each pixel over time, computed
+ * in the background, which can be zoomed into.
+ * <p/>
+ * When the {@value FlatField#PROPERTY} system property gives a calibration
+ * (see {@link FlatField}), the frames are displayed corrected : the
+ * "raw values" button shows them as they were captured. The search always
+ * looks at the raw values.
  * <p/>
  * <p>Original author: Lucy Linder<br/>
  * Context: KJunior (TIC) Project, first year of Bachelor of Computer Science, EIA-FR</p>
@@ -40,21 +88,47 @@ import java.io.IOException;
  */
 public class RobotLinearCamAnalyser extends JPanel {
 
-    private int[] pixels; // the pixels read by the robot and stored in a file
+    /**
+     * the frequency at which the captures without timestamps are shown, by
+     * default, in milliseconds
+     */
+    public static final int DEFAULT_FREQUENCY = 40;
+
+    // hands the frames read over to the painting thread
+    private FrameExchange frames = new FrameExchange(this);
     private String filepath; // the file storing the pixel values
-    private int nextLine = 0; // the next line to be read from the file
-    private int nbrOfFrames; // the number of frames (images) contained in
+    private volatile int nextLine = 0; // the next line to be read from the file
+    private volatile int nbrOfFrames; // the number of frames (images) contained in
     // the file
-    private BufferedReader bf;
-    private Timer timer; // the timer to update the frames
-    private int frequency; // frequency of the frames
+    private Capture capture; // the file, mapped in memory
+    private FrameCache cache; // the frames around the current one, decoded
+    private boolean adjustingSlider = false; // true when the range of the slider changes
+    private PlaybackEngine engine; // plays the frames, on its own thread
+    private int[] passedLine = new int[Capture.FRAME_WIDTH]; // a frame skipped by the engine
+    private int frequency; // frequency of the frames, without timestamps
     private int pixelHeight = 200, pixelWidth = 12; // dimension of a "pixel"
 
     private boolean showDelimiters = false;
+    private boolean showLine = false;
+    private LineDetector detector = new LineDetector(); // finds the line in the frames read
+    private FlatField calibration = FlatField.fromSystemProperty(); // null if none
+    private volatile boolean calibrated = calibration != null; // false to display the raw values
+
+    private LineRenderer renderer = new LineRenderer(); // draws the pixels
+    private TextRow frameInfo = new TextRow(40); // "frame number : x / n"
+    private WaterfallPanel waterfall; // the frames before the current one
+    private Font infoFont; // the font of the frame number
+
+    private ViewerMetrics metrics = new ViewerMetrics(); // read and paint times
+    private boolean showMetrics = false;
+
+    private FrameSearch search; // the last search started, if any
+    private ForkJoinPool searchPool; // the threads searching, created by the first search
+    private OverviewPyramid overview; // the whole file at every scale, built in the background
 
 
     /**
-     * main : creates a frame, initializes the variables and starts the timer.
+     * main : creates a frame, initializes the variables and starts the playback.
      *
      * @param args program arguments
      * @throws IOException
@@ -65,14 +139,14 @@ public class RobotLinearCamAnalyser extends JPanel {
 
         if (args.length < 1 || args.length > 2) { // not enough arguments ?
             System.err
-                    .println("You must specify the path to a file and optionally the frame rate in ms.");
+                    .println("You must specify the path to a file (or a directory, or a pattern) and optionally the frame rate in ms.");
             System.exit(1);
         }
 
         // Main panel
         RobotLinearCamAnalyser camAnalyserPanel;
 
-        int frequency = 0;
+        int frequency = DEFAULT_FREQUENCY;
         // The user may optionally specify a frame rate.
         // If this is the case, there is be more than one argument,
         if (args.length > 1) {
@@ -84,15 +158,6 @@ public class RobotLinearCamAnalyser extends JPanel {
                         .println("The second argument must be an integer representing the frame rate in ms.");
                 System.exit(1);
             }
-        } else {
-            // Launch analyzer with default frequency
-            try {
-                camAnalyserPanel = new RobotLinearCamAnalyser(args[0]);
-                frequency = camAnalyserPanel.frequency; // copy frequency set by constructor
-            } catch (FileNotFoundException e) {
-                System.err.println("the file : " + args[0] + " does not exist...");
-                System.exit(1);
-            }
         }
 
         // second argument less or equal to 0 ?
@@ -101,7 +166,8 @@ public class RobotLinearCamAnalyser extends JPanel {
             System.exit(1);
         }
 
-        // Launch analyzer with the frequency given by the user
+        // Launch analyzer with the frequency given by the user, or the
+        // default one
         try {
             camAnalyserPanel = new RobotLinearCamAnalyser(args[0], frequency);
         } catch (FileNotFoundException e) {
@@ -124,10 +190,12 @@ public class RobotLinearCamAnalyser extends JPanel {
 
         JFrame frame = new JFrame("KJunior Robot Linear Camera Analyzer");
         JPanel mainPanel = new JPanel(new BorderLayout());
-        mainPanel.add(camAnalyserPanel, BorderLayout.CENTER);
+        mainPanel.add(camAnalyserPanel, BorderLayout.NORTH);
+        mainPanel.add(camAnalyserPanel.getWaterfall(), BorderLayout.CENTER);
         mainPanel.add(camAnalyserPanel.getButtonPanel(), BorderLayout.SOUTH);
 
         frame.getContentPane().add(mainPanel);
+        camAnalyserPanel.metrics.register("RobotLinearCamAnalyser");
 
         frame.setSize(15 + 102 * camAnalyserPanel.pixelWidth + 20, 430);
         frame.setResizable(false);
@@ -144,110 +212,120 @@ public class RobotLinearCamAnalyser extends JPanel {
      */
 
     public RobotLinearCamAnalyser(String filepath) throws IOException {
-        this(filepath, 40);
+        this(filepath, DEFAULT_FREQUENCY);
     }
 
 
     /**
      * @param filepath  the file holding the captures
      * @param frequency the frequency, in milliseconds, at which to show the captures
-     *                  (default is 40)
+     *                  (default is {@value #DEFAULT_FREQUENCY}), when they have
+     *                  no timestamps
      * @throws IOException
      */
     public RobotLinearCamAnalyser(String filepath, int frequency)
             throws IOException {
         this.setPreferredSize(new Dimension(15 + 102 * this.pixelWidth + 20,
                 this.pixelHeight + 120));
-        this.pixels = new int[102];
         this.frequency = frequency;
         this.filepath = filepath;
 
+        this.capture = Captures.open(filepath, true);
         this.nbrOfFrames = this.getNbrOfLines();
-        this.bf = new BufferedReader(new FileReader(filepath));
+        this.waterfall = new WaterfallPanel(15, this.pixelWidth, this.pixelHeight);
+        this.cache = new FrameCache(this.capture, this.waterfall.getCapacity());
+        this.overview = new OverviewPyramid(this.capture);
+        this.overview.start();
         this.parseFromFile();
 
-        // timer : reads the 1 line in the file and updates the screen
-        this.timer = new Timer(this.frequency, new ActionListener() {
-            public void actionPerformed(ActionEvent evt) {
-                try {
-                    parseFromFile();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        });
+        // playback engine : tells which frame to display, from the clock
+        this.engine = new PlaybackEngine(this.cache, 1000.0 / this.frequency,
+                new PlaybackEngine.Listener() {
+                    @Override
+                    public void frameReached(int frameNbr) {
+                        playTo(frameNbr);
+                    }
+                });
 
-        this.timer.start();
+        this.engine.play(getCurrentFrame());
 
     }// end constructor
 
 
     /**
-     * gets the total number of lines in the specified file
+     * gets the total number of lines in the specified file, counted when it
+     * was opened
      *
      * @return
      * @throws IOException
      */
     public int getNbrOfLines() throws IOException {
-        BufferedReader bf = new BufferedReader(new FileReader(filepath));
-        int lines = 0;
+        return capture.getNbrOfFrames();
+    }
 
-        while (bf.readLine() != null)
-            lines++;
 
-        bf.close();
-        return lines;
+    /**
+     * @return true once the number of lines of the file is known for good,
+     * i.e. once the file is fully indexed
+     */
+    public boolean isIndexed() {
+        return !(capture instanceof MappedCapture) || ((MappedCapture) capture).isIndexed();
+    }
+
+
+    /**
+     * @return the part of the file indexed so far, between 0 and 1
+     */
+    public double getIndexingProgress() {
+        return capture instanceof MappedCapture ? ((MappedCapture) capture).getIndexingProgress() : 1;
     }
 
 
     /**
      * paints the JPanel : creates a representation of the pixels seen by the
      * robot's camera and writes informations under it. The pixels are stored in
-     * an array of ints that is updated by calling the parseFromFile method. The
-     * text to draw under the rectangle is stored in the "infos" String.
+     * an array of ints that is updated by calling the parseFromFile method, and
+     * drawn by the renderer.
      */
     @Override
     public void paint(Graphics g) {
 
+        long paintStart = System.nanoTime();
         int offsetX = 15, offsetY = 20; // offset for the rectangles/pixels
+        Frame frame = frames.getFrontBuffer();
 
         // fills the jpanel background
         g.setColor(this.getBackground());
         g.fillRect(0, 0, this.getWidth(), this.getHeight());
 
-        StringBuilder builder = new StringBuilder();
-        String left = "", middle = "";
-
         // draws the "pixels"
-        for (int i = 0; i < this.pixels.length; i++) {
-            g.setColor(new Color(pixels[i], pixels[i], pixels[i]));
-            g.fillRect(offsetX, offsetY, pixelWidth, pixelHeight);
-            offsetX += pixelWidth;
-            // Fill with zeroes so that it looks nice
-            builder.append(String.format("%03d  ", pixels[i]));
-            // records the pixel values as string
-            if (i == 33) {
-                left = builder.toString();
-                builder = new StringBuilder();
-            } else if (i == 67) {
-                middle = builder.toString();
-                builder = new StringBuilder();
-            }
-
+        renderer.setPixels(frame.pixels);
+        renderer.drawPixels(g, offsetX, offsetY, pixelWidth, pixelHeight);
+        if (this.showLine) {
+            renderer.drawLine(g, frame.line, offsetX, offsetY, pixelWidth, pixelHeight);
         }
 
         // draws the pixel values
         g.setColor(Color.black);
-        g.drawString("LEFT:      " + left, 20, offsetY + pixelHeight + 55);
-        g.drawString("MIDDLE:  " + middle, 20, offsetY + pixelHeight + 75);
-        g.drawString("RIGHT:    " + builder.toString(), 20, offsetY
-                + pixelHeight + 95);
+        renderer.drawValues(g, 20, offsetY + pixelHeight + 55, 20);
 
         // draws the number of frames info
+        if (this.infoFont == null) {
+            this.infoFont = getFont().deriveFont(15f).deriveFont(Font.BOLD);
+        }
         g.setColor(Color.BLACK);
-        g.setFont(getFont().deriveFont(15f).deriveFont(Font.BOLD));
-        g.drawString("frame number : " + this.nextLine + " / "
-                + (this.nbrOfFrames - 1), 20, offsetY + pixelHeight + 30);
+        g.setFont(this.infoFont);
+        frameInfo.clear().append("frame number : ").append(getCurrentFrame())
+                .append(" / ").append(this.nbrOfFrames - 1);
+        frame.line.appendTo(frameInfo.append("   line : "));
+        if (!isIndexed()) {
+            frameInfo.append(" (indexing : ").append((int) (getIndexingProgress() * 100)).append(" %)");
+        }
+        if (capture instanceof CaptureTimeline && getCurrentFrame() >= 0) {
+            CaptureTimeline timeline = (CaptureTimeline) capture;
+            frameInfo.append("   file : ").append(timeline.getFilepath(timeline.getFileOf(getCurrentFrame())));
+        }
+        frameInfo.draw(g, 20, offsetY + pixelHeight + 30);
 
         // draws the delimiters of the left, middle and right pixel zones
         if (this.showDelimiters) {
@@ -257,6 +335,13 @@ public class RobotLinearCamAnalyser extends JPanel {
             g.drawLine(15 + 68 * this.pixelWidth, offsetY,
                     15 + (68 * this.pixelWidth), offsetY + this.pixelHeight);
         }
+
+        // draws the metrics over the pixels
+        if (this.showMetrics) {
+            g.setFont(getFont());
+            metrics.draw(g, getWidth() - 540, offsetY + 5);
+        }
+        metrics.framePainted(paintStart, frame.receivedNanos);
     }// end paint
 
 
@@ -271,29 +356,39 @@ public class RobotLinearCamAnalyser extends JPanel {
      */
     public void parseFromFile() throws IOException {
 
-        String line;
-        int i = 0; // i j for the indexes of the pixels array
-
-        // reads 1 line and stores the pixel values in the pixels array
-        line = bf.readLine();
-
-        // if the end of file is reached, starts again
-        if (line == null) {
-            this.reset();
-            line = bf.readLine();
+        // if the end of file is reached, starts again, unless more frames
+        // are being indexed
+        if (nextLine >= nbrOfFrames) {
+            this.nbrOfFrames = this.getNbrOfLines();
+            if (nextLine < nbrOfFrames) {
+                // the next frame has been indexed in the meantime
+            } else if (isIndexed() && nbrOfFrames > 0) {
+                this.reset();
+            } else {
+                return; // waits for the indexing
+            }
+        }
+        if (nextLine == 0) {
+            waterfall.clear();
         }
 
-        for (String pixel : line.split(" ")) {
-            try {
-                pixels[i++] = Integer.parseInt(pixel);
-            } catch (NumberFormatException e) {
-                System.out.println("parse error: " + pixel);
-            }
+        // reads 1 line and stores the pixel values in the next frame
+        Frame frame = frames.getBackBuffer();
+        long start = System.nanoTime();
+        cache.moveTo(nextLine);
+        readFrame(nextLine, frame.pixels);
+        detector.detect(frame.pixels, frame.line);
+        frame.sequence = nextLine;
+        frame.receivedNanos = System.nanoTime();
+        metrics.frameReceived(frame.receivedNanos - start);
+        if (capture instanceof MappedCapture) {
+            metrics.setMalformedCount(((MappedCapture) capture).getMalformedCount());
         }
+        waterfall.addLine(frame.pixels);
 
-        // updates the infos String and updates/repaints the jpanel
+        // updates the infos String and repaints the jpanel
         nextLine++;
-        this.repaint();
+        frames.publish();
 
     }// end parseFromFile
 
@@ -305,13 +400,14 @@ public class RobotLinearCamAnalyser extends JPanel {
      */
     public void reset() throws FileNotFoundException {
         this.nextLine = 0;
-        try {
-            this.bf.close();
-        } catch (IOException e) {
-            System.out.println("while closing the bufferedreader");
-            e.printStackTrace();
-        }
-        this.bf = new BufferedReader(new FileReader(filepath));
+    }
+
+
+    /**
+     * @return the number of the frame currently displayed, starting at 0
+     */
+    public int getCurrentFrame() {
+        return this.nextLine - 1;
     }
 
 
@@ -324,19 +420,108 @@ public class RobotLinearCamAnalyser extends JPanel {
      */
     public void goToFrame(int frameNbr) throws IOException {
 
-        if (frameNbr < 0 || frameNbr > nbrOfFrames) {
+        this.nbrOfFrames = this.getNbrOfLines();
+        if (frameNbr < 0 || frameNbr >= nbrOfFrames) {
             throw new NumberFormatException("frame number out of range");
         }
 
-        reset();
+        // no need to skip the frames before frameNbr : the index tells where
+        // it starts. The waterfall is filled with the frames before it,
+        // unless frameNbr simply follows the current frame.
+        if (frameNbr != this.nextLine) {
+            fillWaterfall(frameNbr);
+        }
+        this.nextLine = frameNbr;
+        parseFromFile(); // reads the next unread frame, i.e. frameNbr
 
-        this.nextLine = frameNbr - 1; // updates lineCount to display
+    }
 
-        // reads/skips all the frames before frameNbr
-        for (int i = 0; i < frameNbr; i++)
-            bf.readLine();
-        parseFromFile(); // reads the next unread frame, i.e. frameNbr
 
+    /**
+     * displays the frame reached by the playback engine, on its thread.
+     * Playing forwards, the frames skipped since the current one still go to
+     * the waterfall, so that it shows every frame.
+     */
+    private void playTo(int frameNbr) {
+        try {
+            int current = getCurrentFrame();
+            if (frameNbr > current && frameNbr - current <= waterfall.getCapacity()) {
+                for (int i = current + 1; i < frameNbr; i++) {
+                    readFrame(i, passedLine);
+                    waterfall.addLine(passedLine);
+                }
+                this.nextLine = frameNbr;
+                parseFromFile();
+            } else {
+                goToFrame(frameNbr);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * reads a frame from the cache, and corrects it if the calibration is
+     * applied.
+     */
+    private void readFrame(int frameNbr, int[] pixels) {
+        cache.readFrame(frameNbr, pixels);
+        if (calibrated)
+            calibration.filter(pixels);
+    }
+
+
+    /**
+     * starts searching the frames of the file matching a predicate, in the
+     * background. The previous search, if any, is cancelled.
+     *
+     * @param predicate what to look for
+     * @return the search, which gives the frames found so far
+     */
+    public FrameSearch search(FrameSearch.Predicate predicate) {
+        if (this.search != null)
+            this.search.cancel();
+        if (this.searchPool == null)
+            this.searchPool = new ForkJoinPool();
+
+        // the file itself, not the cache : searching would evict the frames
+        // around the current one
+        this.search = new FrameSearch(this.capture, predicate);
+        this.search.start(this.searchPool);
+        return this.search;
+    }
+
+
+    /**
+     * @return the engine playing the frames
+     */
+    public PlaybackEngine getPlaybackEngine() {
+        return engine;
+    }
+
+
+    /**
+     * fills the waterfall with the frames preceding the given one.
+     *
+     * @param frameNbr the frame which is about to be displayed
+     */
+    private void fillWaterfall(int frameNbr) {
+        int[] line = new int[Capture.FRAME_WIDTH];
+
+        waterfall.clear();
+        for (int i = Math.max(0, frameNbr - waterfall.getCapacity() + 1); i < frameNbr; i++) {
+            readFrame(i, line);
+            waterfall.addLine(line);
+        }
+    }
+
+
+    /**
+     * @return the waterfall showing the frames up to the current one
+     */
+    public WaterfallPanel getWaterfall() {
+        return waterfall;
     }
 
 
@@ -347,11 +532,11 @@ public class RobotLinearCamAnalyser extends JPanel {
      * @return
      */
     public JPanel getButtonPanel() {
-        final JButton pauseButton, resetButton, previousFrameButton, nextFrameButton, showDelimitersButton;
+        final JButton pauseButton, resetButton, previousFrameButton, nextFrameButton, showDelimitersButton,
+                showLineButton, showMetricsButton, calibrationButton;
         JLabel goToLabel;
         final JTextField goToFrame;
-        final JSlider frameSlider = new JSlider(JSlider.HORIZONTAL, 1,
-                nbrOfFrames - 1, 1);
+        final MarkedSlider frameSlider = new MarkedSlider(Math.max(0, nbrOfFrames - 1), 0);
 
         final ImageIcon pauseIcon = new ImageIcon("resources/pause.png"), playIcon = new ImageIcon(
                 "resources/play.png");
@@ -362,12 +547,12 @@ public class RobotLinearCamAnalyser extends JPanel {
             public void actionPerformed(ActionEvent e) {
                 JButton but = (JButton) e.getSource();
 
-                if (timer.isRunning()) {
-                    timer.stop();
+                if (engine.isPlaying()) {
+                    engine.pause();
                     but.setIcon(playIcon);
-                    frameSlider.setValue(nextLine);
+                    frameSlider.setValue(getCurrentFrame());
                 } else {
-                    timer.start();
+                    engine.play(getCurrentFrame());
                     but.setIcon(pauseIcon);
                 }
             }
@@ -378,7 +563,7 @@ public class RobotLinearCamAnalyser extends JPanel {
         resetButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
 
-                if (timer.isRunning()) { // stops the timer and updates the
+                if (engine.isPlaying()) { // stops the playback and updates the
                     // play/pause button
                     pauseButton.doClick();
                 }
@@ -387,7 +572,7 @@ public class RobotLinearCamAnalyser extends JPanel {
                 try {
                     reset();
                     parseFromFile();
-                    frameSlider.setValue(1);
+                    frameSlider.setValue(0);
                 } catch (IOException e1) {
                     System.out.println("file not found");
                     e1.printStackTrace();
@@ -401,19 +586,18 @@ public class RobotLinearCamAnalyser extends JPanel {
         previousFrameButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
 
-                // stops the timer
-                if (timer.isRunning()) {
+                // stops the playback
+                if (engine.isPlaying()) {
                     pauseButton.doClick();
                 }
 
                 try { // displays the previous frame
-                    if (nextLine == 1) {
-                        nextLine = nbrOfFrames - 1;
-                        goToFrame(nextLine);
+                    if (getCurrentFrame() == 0) {
+                        goToFrame(nbrOfFrames - 1);
                     } else {
-                        goToFrame(--nextLine);
+                        goToFrame(getCurrentFrame() - 1);
                     }
-                    frameSlider.setValue(nextLine); // updates the sliders
+                    frameSlider.setValue(getCurrentFrame()); // updates the sliders
                     // value
                 } catch (IOException e1) {
                     // TODO Auto-generated catch block
@@ -427,14 +611,14 @@ public class RobotLinearCamAnalyser extends JPanel {
         nextFrameButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
 
-                // stops the timer
-                if (timer.isRunning()) {
+                // stops the playback
+                if (engine.isPlaying()) {
                     pauseButton.doClick();
                 }
 
                 try { // displays the next frame
                     parseFromFile();
-                    frameSlider.setValue(nextLine); // updates the sliders
+                    frameSlider.setValue(getCurrentFrame()); // updates the sliders
                     // value
                 } catch (IOException e1) {
                     // TODO Auto-generated catch block
@@ -443,6 +627,23 @@ public class RobotLinearCamAnalyser extends JPanel {
             }
         });
 
+        // speed of the playback, and its direction
+        final String[] speeds = {"0.1x", "0.25x", "0.5x", "1x", "2x", "5x", "10x", "25x", "50x", "100x"};
+        final JComboBox<String> speedBox = new JComboBox<String>(speeds);
+        speedBox.setSelectedItem("1x");
+        speedBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                String speed = (String) speedBox.getSelectedItem();
+                engine.setSpeed(Double.parseDouble(speed.substring(0, speed.length() - 1)));
+            }
+        });
+        final JCheckBox reverseBox = new JCheckBox("reverse");
+        reverseBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                engine.setReverse(reverseBox.isSelected());
+            }
+        });
+
         // show delimiters button : shows where the left, middle, and right
         // arrays start
         showDelimitersButton = new JButton("show delimiters");
@@ -458,7 +659,60 @@ public class RobotLinearCamAnalyser extends JPanel {
                     but.setText("hide delimiters");
                 }
 
-                if (!timer.isRunning())
+                if (!engine.isPlaying())
+                    repaint();
+            }
+
+        });
+
+        // show line button : shows the line detected over the pixels
+        showLineButton = new JButton("show line");
+        showLineButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JButton but = (JButton) e.getSource();
+
+                showLine = !showLine;
+                but.setText(showLine ? "hide line" : "show line");
+
+                if (!engine.isPlaying())
+                    repaint();
+            }
+
+        });
+
+        // calibration button : shows the raw values, or the values corrected
+        // by the calibration
+        calibrationButton = new JButton("raw values");
+        calibrationButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JButton but = (JButton) e.getSource();
+
+                calibrated = !calibrated;
+                but.setText(calibrated ? "raw values" : "calibrate");
+
+                // displays the current frame again, and the waterfall
+                if (!engine.isPlaying() && getCurrentFrame() >= 0) {
+                    try {
+                        goToFrame(getCurrentFrame());
+                    } catch (IOException e1) {
+                        e1.printStackTrace();
+                    }
+                }
+            }
+
+        });
+
+        // show metrics button : shows the read and paint times over the
+        // pixels
+        showMetricsButton = new JButton("show metrics");
+        showMetricsButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JButton but = (JButton) e.getSource();
+
+                showMetrics = !showMetrics;
+                but.setText(showMetrics ? "hide metrics" : "show metrics");
+
+                if (!engine.isPlaying())
                     repaint();
             }
 
@@ -472,10 +726,10 @@ public class RobotLinearCamAnalyser extends JPanel {
                 if (e.getKeyCode() == KeyEvent.VK_ENTER) {
                     JTextField source = (JTextField) e.getSource();
                     try {
-                        goToFrame(Integer.parseInt(source.getText()));
-                        if (timer.isRunning()) // stops the timer
+                        if (engine.isPlaying()) // stops the playback
                             pauseButton.doClick();
-                        frameSlider.setValue(nextLine);// updates the sliders
+                        goToFrame(Integer.parseInt(source.getText()));
+                        frameSlider.setValue(getCurrentFrame());// updates the sliders
                         // value
                     } catch (Exception e2) {
                         source.setText("");
@@ -501,14 +755,20 @@ public class RobotLinearCamAnalyser extends JPanel {
 
             @Override
             public void stateChanged(ChangeEvent e) {
+                if (adjustingSlider) {
+                    return; // only the range changed
+                }
                 JSlider source = (JSlider) e.getSource();
                 // if we don't want the frames to adjust during the slider
                 // changes
                 // if( source.getValueIsAdjusting() )
                 // return;
-                if (timer.isRunning()) {
+                if (engine.isPlaying()) {
                     pauseButton.doClick();
                 }
+                if (source.getValue() == getCurrentFrame()) {
+                    return; // already displayed, the slider follows the frame
+                }
                 try {
                     goToFrame(source.getValue());
                 } catch (IOException e1) {
@@ -519,27 +779,200 @@ public class RobotLinearCamAnalyser extends JPanel {
 
         frameSlider.setPreferredSize(new Dimension(getWidth() - 25, 5));
 
+        // indexing progress bar : shown until the file is indexed, while the
+        // range of the slider grows
+        final JProgressBar indexingBar = new JProgressBar(0, 100);
+        indexingBar.setStringPainted(true);
+        indexingBar.setVisible(!isIndexed());
+        final Timer indexingTimer = new Timer(200, null);
+        indexingTimer.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                try {
+                    nbrOfFrames = getNbrOfLines();
+                } catch (IOException e1) {
+                    e1.printStackTrace();
+                }
+                adjustingSlider = true;
+                frameSlider.setMaximum(Math.max(0, nbrOfFrames - 1));
+                adjustingSlider = false;
+                indexingBar.setValue((int) (getIndexingProgress() * 100));
+
+                if (isIndexed()) {
+                    indexingTimer.stop();
+                    indexingBar.setVisible(false);
+                }
+                if (!engine.isPlaying())
+                    repaint();
+            }
+        });
+        if (!isIndexed()) {
+            indexingTimer.start();
+        }
+
+        // search : the frames found are listed and marked on the slider, as
+        // they are found
+        final SearchResults results = new SearchResults();
+        final JList<Integer> resultsList = new JList<Integer>(results);
+        resultsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        resultsList.addListSelectionListener(new ListSelectionListener() {
+            public void valueChanged(ListSelectionEvent e) {
+                Integer frameNbr = resultsList.getSelectedValue();
+                if (e.getValueIsAdjusting() || frameNbr == null)
+                    return;
+                if (engine.isPlaying())
+                    pauseButton.doClick();
+                frameSlider.setValue(frameNbr); // goes to the frame
+            }
+        });
+        JScrollPane resultsPane = new JScrollPane(resultsList);
+        resultsPane.setPreferredSize(new Dimension(110, 0));
+
+        final JTextField searchField = new JTextField("mean MIDDLE < 60", 16);
+        searchField.setToolTipText("pixel|mean <LEFT|MIDDLE|RIGHT|from-to> <|> <value>, "
+                + "edge <from-to>, or edge crosses <pixel>");
+        final JButton searchButton = new JButton("search");
+        final JLabel searchLabel = new JLabel(" ");
+        final Timer searchTimer = new Timer(200, null);
+        searchTimer.addActionListener(new ActionListener() {
+            int shown = -1; // the number of frames found already shown
+
+            public void actionPerformed(ActionEvent e) {
+                FrameSearch current = search;
+                boolean done = current.isDone();
+                int found = current.getNbrOfMatches();
+                if (found != shown || done) {
+                    int[] matches = current.getMatches();
+                    frameSlider.setMarks(matches);
+                    results.setFrames(matches);
+                    shown = found;
+                }
+                searchLabel.setText(found + " frames found"
+                        + (done ? "" : " (" + (int) (current.getProgress() * 100) + " %)"));
+                if (done) {
+                    searchTimer.stop();
+                    searchButton.setText("search");
+                    shown = -1;
+                }
+            }
+        });
+        ActionListener searchAction = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (searchTimer.isRunning()) {
+                    search.cancel(); // the timer stops once it is done
+                    return;
+                }
+                try {
+                    search(FrameSearch.parse(searchField.getText()));
+                } catch (IllegalArgumentException e1) {
+                    searchLabel.setText(e1.getMessage());
+                    return;
+                }
+                searchButton.setText("cancel");
+                searchTimer.start();
+            }
+        };
+        searchButton.addActionListener(searchAction);
+        searchField.addActionListener(searchAction);
+
+        // previous and next result buttons : from the current frame
+        JButton previousResultButton = new JButton("<");
+        previousResultButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                int frameNbr = frameSlider.getPreviousMark(getCurrentFrame());
+                if (engine.isPlaying())
+                    pauseButton.doClick();
+                if (frameNbr >= 0)
+                    frameSlider.setValue(frameNbr);
+            }
+        });
+        JButton nextResultButton = new JButton(">");
+        nextResultButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                int frameNbr = frameSlider.getNextMark(getCurrentFrame());
+                if (engine.isPlaying())
+                    pauseButton.doClick();
+                if (frameNbr >= 0)
+                    frameSlider.setValue(frameNbr);
+            }
+        });
+
         // adds all the buttons to the jpanel
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 10));
         buttonPanel.add(pauseButton);
         buttonPanel.add(resetButton);
         buttonPanel.add(previousFrameButton);
         buttonPanel.add(nextFrameButton);
+        buttonPanel.add(speedBox);
+        buttonPanel.add(reverseBox);
 
         JPanel optionPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 15, 1));
         optionPanel.add(showDelimitersButton);
+        optionPanel.add(showLineButton);
+        if (calibration != null)
+            optionPanel.add(calibrationButton);
+        optionPanel.add(showMetricsButton);
+        optionPanel.add(indexingBar);
         optionPanel.add(goToLabel);
         optionPanel.add(goToFrame);
 
-        // creates a container, required in order to have two lines of control :
-        // sliders + buttons
-        JPanel container = new JPanel(new GridLayout(3, 1));
-        container.add(frameSlider); // adds the slider
-        container.add(buttonPanel);// adds the button panel
-        container.add(optionPanel);
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 1));
+        searchPanel.add(new JLabel("search : "));
+        searchPanel.add(searchField);
+        searchPanel.add(searchButton);
+        searchPanel.add(previousResultButton);
+        searchPanel.add(nextResultButton);
+        searchPanel.add(searchLabel);
+
+        // creates a container, required in order to have several lines of
+        // control : sliders + buttons, and the results of the search aside
+        JPanel controls = new JPanel(new GridLayout(4, 1));
+        controls.add(frameSlider); // adds the slider
+        controls.add(buttonPanel);// adds the button panel
+        controls.add(optionPanel);
+        controls.add(searchPanel);
+
+        // the overview of the whole file, above the slider
+        JPanel timeline = new JPanel(new BorderLayout());
+        timeline.add(new OverviewStrip(overview, frameSlider, Capture.FRAME_WIDTH / 2), BorderLayout.NORTH);
+        timeline.add(controls, BorderLayout.CENTER);
+
+        JPanel container = new JPanel(new BorderLayout());
+        container.add(timeline, BorderLayout.CENTER);
+        container.add(resultsPane, BorderLayout.EAST);
         return container;
 
     }// end getButtonPanel
+
+
+    /**
+     * the frames found by a search, as shown by the results list
+     */
+    private static class SearchResults extends AbstractListModel<Integer> {
+
+        private int[] frames = new int[0];
+
+
+        void setFrames(int[] frames) {
+            int previousSize = this.frames.length;
+            this.frames = frames;
+            if (previousSize > 0)
+                fireIntervalRemoved(this, 0, previousSize - 1);
+            if (frames.length > 0)
+                fireIntervalAdded(this, 0, frames.length - 1);
+        }
+
+
+        @Override
+        public int getSize() {
+            return frames.length;
+        }
+
+
+        @Override
+        public Integer getElementAt(int index) {
+            return frames[index];
+        }
+    }
     /**
      * reads a file to get the pixel values. The pixels must be stored in the
      * following format : the first line is the LEFT pixel values separated by a
@@ -0,0 +1,63 @@
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+
+/**
+ * This programs displays the cameras of several robots at once, each in its
+ * own tile, in a single process : all the streams are read by one thread
+ * (see {@link MultiStreamReader}), and painted by the Swing thread.
+ * <p/>
+ * Usage : <code>java RobotLiveDashboard [--port n] [file...]</code>
+ * <p/>
+ * With <code>--port</code>, every robot connecting to this TCP port gets a
+ * tile. Every file given is followed, and gets a tile too.
+ */
+public class RobotLiveDashboard extends JPanel implements MultiStreamReader.Listener {
+
+    public static void main(String[] args) throws IOException {
+        final RobotLiveDashboard dashboard = new RobotLiveDashboard();
+        MultiStreamReader reader = new MultiStreamReader(dashboard);
+
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("--port")) {
+            reader.listen(Integer.parseInt(args[1]));
+            first = 2;
+        } else if (args.length == 0) {
+            System.err.println("usage : java RobotLiveDashboard [--port n] [file...]");
+            System.exit(1);
+        }
+        for (int i = first; i < args.length; i++)
+            reader.follow(args[i]);
+
+        JFrame frame = new JFrame("KJunior Live Dashboard");
+        frame.getContentPane().add(new JScrollPane(dashboard));
+        frame.setSize(2 * (10 + 102 * 4 + 10) + 40, 600);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setVisible(true);
+
+        new Thread(reader, "dashboard reader").start();
+    }
+
+
+    public RobotLiveDashboard() {
+        super(new GridLayout(0, 2, 5, 5));
+    }
+
+
+    /**
+     * creates the tile of a new stream, and adds it to the dashboard.
+     */
+    @Override
+    public DashboardTile streamStarted(String name) {
+        final DashboardTile tile = new DashboardTile(name);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                add(tile);
+                revalidate();
+            }
+        });
+        return tile;
+    }
+
+}
@@ -0,0 +1,290 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimerTask;
+
+/**
+ * This programs displays the lines of 102 grayscale values output by the
+ * robot, live, whatever the way they are transmitted : see {@link FrameSource}.
+ * <p/>
+ * Usage :
+ * <ul>
+ * <li><code>java RobotLiveLinearCam</code> or
+ * <code>java RobotLiveLinearCam stdin</code> : reads standard input</li>
+ * <li><code>java RobotLiveLinearCam file path</code> : follows a file being
+ * written</li>
+ * <li><code>java RobotLiveLinearCam fifo path</code> : reads a named pipe</li>
+ * <li><code>java RobotLiveLinearCam tcp port</code> : listens on a TCP
+ * port</li>
+ * </ul>
+ * The text and binary formats are both accepted, on every transport.
+ * <p/>
+ * The "Record" button writes the frames received to binary captures in the
+ * working directory, in the background (see {@link FrameRecorder}). A new file
+ * is started every {@value #RECORD_SIZE_PROPERTY} megabytes (64 by default).
+ * Closing the viewer while recording writes the frames received so far before
+ * exiting.
+ * <p/>
+ * The "Metrics" button shows the rate of the frames, the parse, paint and
+ * end-to-end latencies over the frame (see {@link ViewerMetrics}). They are
+ * measured all the time, and exported through JMX. When the lines carry their
+ * timestamp and their sequence number (see {@link PixelParser}), the rate at
+ * which they were captured, their jitter, the lines lost on the way and the
+ * time from their capture to the screen are shown too.
+ * <p/>
+ * The line followed by the robot is detected in every frame received (see
+ * {@link LineDetector}) : its centre and the confidence of the detection are
+ * shown under the pixels, and the "Line" button draws it over them.
+ * <p/>
+ * The frames can be filtered before they are painted, for instance to smooth
+ * the noise of the sensor : the filters are given by the
+ * {@value FilterPipeline#PROPERTY} system property (see
+ * {@link FilterPipeline}), such as
+ * <code>-Dkjunior.filters=median:5,ema:0.25</code>. The "Filters" button turns
+ * them off and on, and the metrics show the cost of each of them. The frames
+ * are recorded as they are received, before being filtered. The calibration
+ * given by the {@value FlatField#PROPERTY} system property, if any (see
+ * {@link FlatField}), corrects the frames before the filters, and stays on
+ * when they are turned off.
+ */
+public class RobotLiveLinearCam extends JPanel {
+
+    /**
+     * the system property holding the size of the recorded files, in
+     * megabytes
+     */
+    public static final String RECORD_SIZE_PROPERTY = "kjunior.record.size";
+
+    private final FrameSource source; // where the frames come from
+    // hands the frames read over to the painting thread
+    private final FrameExchange frames = new FrameExchange(this);
+    private final LineRenderer renderer = new LineRenderer();
+    private final TextRow info = new TextRow(120);
+    // the last lines read, below the current one
+    private final WaterfallPanel waterfall = new WaterfallPanel(15, 15, 200);
+    // records the frames read, while the record button is pressed
+    private volatile FrameRecorder recorder = null;
+    private final ViewerMetrics metrics = new ViewerMetrics();
+    private boolean showMetrics = false;
+    private final LineDetector detector = new LineDetector(); // reading thread only
+    private final FlatField calibration = FlatField.fromSystemProperty(); // null if none
+    private final FilterPipeline filters = FilterPipeline.fromSystemProperty(); // reading thread only
+    private boolean showLine = false;
+
+    private Runnable readFramesRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            // Read the frames and update image on screen
+            try {
+                while (source.read(frames.getBackBuffer())) {
+                    Frame frame = frames.getBackBuffer();
+                    FrameRecorder recording = recorder;
+                    if (recording != null)
+                        recording.record(frame); // as received
+                    if (calibration != null)
+                        calibration.filter(frame.pixels);
+                    filters.filter(frame.pixels);
+                    detector.detect(frame.pixels, frame.line);
+                    metrics.frameReceived(frame);
+                    metrics.setMalformedCount(source.getMalformedCount());
+                    waterfall.addLine(frame.pixels);
+                    frames.publish();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    };
+
+
+    public static void main(String[] args) throws IOException {
+        FrameSource source;
+
+        if (args.length == 0 || (args.length == 1 && args[0].equals("stdin"))) {
+            source = new StreamFrameSource(System.in);
+        } else if (args.length == 2 && args[0].equals("file")) {
+            source = new FileFrameSource(args[1]);
+        } else if (args.length == 2 && args[0].equals("fifo")) {
+            source = new FifoFrameSource(args[1]);
+        } else if (args.length == 2 && args[0].equals("tcp")) {
+            source = new SocketFrameSource(Integer.parseInt(args[1]));
+        } else {
+            System.err.println("usage : java RobotLiveLinearCam [stdin | file <path> | fifo <path> | tcp <port>]");
+            System.exit(1);
+            return;
+        }
+
+        show(new RobotLiveLinearCam(source));
+    }
+
+
+    /**
+     * @param source where to read the frames from
+     */
+    public RobotLiveLinearCam(FrameSource source) {
+        this.source = source;
+        this.metrics.setFilters(filters);
+        this.setPreferredSize(new Dimension(15 + 102 * 15 + 20, 235));
+    }
+
+
+    /**
+     * creates the window of the viewer and starts reading the frames.
+     *
+     * @param liveCamPanel the viewer
+     */
+    public static void show(RobotLiveLinearCam liveCamPanel) {
+        JFrame frame = new JFrame("Schrödi's Live Linear Camera 0.0.1");
+        frame.setSize(15 + 102 * 15 + 20, 260 + 200 + 35);
+        frame.setResizable(false);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // on exit, the recording is completed first, whatever ends the viewer
+        final RobotLiveLinearCam viewer = liveCamPanel;
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                viewer.stopRecording();
+            }
+        }, "recording stopper"));
+
+        JPanel mainPanel = new JPanel(new BorderLayout());
+        mainPanel.add(liveCamPanel, BorderLayout.NORTH);
+        mainPanel.add(liveCamPanel.waterfall, BorderLayout.CENTER);
+        mainPanel.add(liveCamPanel.getButtonPanel(), BorderLayout.SOUTH);
+        frame.getContentPane().add(mainPanel);
+
+        liveCamPanel.metrics.register(liveCamPanel.getClass().getSimpleName());
+
+        // May not be the best solution, but does the trick: wait 1 second
+        // before showing the first picture. It should be enough time for the
+        // UI to load.
+        liveCamPanel.delayStart(1);
+        frame.setVisible(true);
+    }
+
+
+    private JPanel getButtonPanel() {
+        JPanel buttonPanel = new JPanel();
+        final JToggleButton recordButton = new JToggleButton("Record");
+        recordButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (recordButton.isSelected()) {
+                    startRecording();
+                } else {
+                    stopRecording();
+                }
+            }
+        });
+        buttonPanel.add(recordButton);
+
+        final JToggleButton metricsButton = new JToggleButton("Metrics");
+        metricsButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showMetrics = metricsButton.isSelected();
+                repaint();
+            }
+        });
+        buttonPanel.add(metricsButton);
+
+        final JToggleButton lineButton = new JToggleButton("Line");
+        lineButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showLine = lineButton.isSelected();
+                repaint();
+            }
+        });
+        buttonPanel.add(lineButton);
+
+        if (filters.getNbrOfStages() > 0) {
+            final JToggleButton filtersButton = new JToggleButton("Filters", true);
+            filtersButton.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    filters.setEnabled(filtersButton.isSelected());
+                }
+            });
+            buttonPanel.add(filtersButton);
+        }
+        return buttonPanel;
+    }
+
+
+    /**
+     * starts recording the frames read, to new files named after the current
+     * time.
+     */
+    public void startRecording() {
+        String prefix = "kjunior-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        long maxFileSize = Long.getLong(RECORD_SIZE_PROPERTY, 64) << 20;
+        recorder = new FrameRecorder(prefix, maxFileSize, 1 << 14);
+        repaint();
+    }
+
+
+    /**
+     * stops recording. Returns once the frames already received are written.
+     */
+    public void stopRecording() {
+        FrameRecorder recording = recorder;
+        recorder = null;
+        if (recording != null)
+            recording.close();
+        repaint();
+    }
+
+
+    // Wait some time before starting the thread reading the frames
+    private void delayStart(int seconds) {
+        new java.util.Timer().schedule(new TimerTask() {
+            @Override
+            public void run() {
+                new Thread(readFramesRunnable, "frame reader").start();
+            }
+        }, seconds * 1000);
+    }
+
+
+    /**
+     * paint method for the JPanel. Updates the screen with the last available
+     * frame, i.e. the last 102 pixels fully read by the reading thread
+     */
+    @Override
+    public void paint(Graphics g) {
+        long paintStart = System.nanoTime();
+        int offsetX = 15, offsetY = 20, height = 200, width = 15;
+        g.setColor(Color.white);
+        g.fillRect(0, 0, this.getWidth(), this.getHeight());
+
+        Frame frame = frames.getFrontBuffer();
+        renderer.setPixels(frame.pixels);
+        renderer.drawPixels(g, offsetX, offsetY, width, height);
+        if (showLine)
+            renderer.drawLine(g, frame.line, offsetX, offsetY, width, height);
+
+        g.setColor(Color.BLACK);
+        info.clear().append("dropped frames : ").append(frames.getDroppedCount());
+        frame.line.appendTo(info.append("   line : "));
+        FrameRecorder recording = recorder;
+        if (recording != null) {
+            info.append("   recording : ").append(recording.getRecordedCount())
+                    .append(" frames, ").append(recording.getNbrOfFiles())
+                    .append(" files, dropped : ").append(recording.getDroppedCount());
+            if (recording.hasFailed())
+                info.append(" (failed)");
+        }
+        info.draw(g, 15, offsetY + height + 12);
+
+        if (showMetrics)
+            metrics.draw(g, getWidth() - 540, offsetY + 5);
+        metrics.framePainted(paintStart, frame);
+    }
+
+}
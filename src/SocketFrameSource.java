@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Listens on a TCP port and reads the frames sent by the robot (or by a
+ * bridge such as <code>nc localhost port &lt; /dev/ttyUSB0</code>).
+ * <p/>
+ * The channels are non-blocking, and driven by a selector : a single thread
+ * waits for both the connections and the data. One sender is read at a time :
+ * when it disconnects, the next connection is accepted, as a new stream.
+ */
+public class SocketFrameSource implements FrameSource {
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private SocketChannel client; // the sender being read, if any
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final FrameDecoder decoder = new FrameDecoder();
+
+
+    /**
+     * starts listening.
+     *
+     * @param port the TCP port to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    public SocketFrameSource(int port) throws IOException {
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.socket().bind(new InetSocketAddress(port));
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        buffer.flip(); // empty
+    }
+
+
+    @Override
+    public boolean read(Frame frame) throws IOException {
+        while (true) {
+            if (buffer.hasRemaining()) {
+                int end = decoder.decode(buffer.array(), buffer.position(), buffer.limit(), frame);
+                if (end >= 0) {
+                    buffer.position(end);
+                    return true;
+                }
+                buffer.position(buffer.limit());
+            }
+
+            if (!selector.isOpen())
+                return false;
+            selector.select();
+            for (SelectionKey key : selector.selectedKeys()) {
+                if (key.isAcceptable()) {
+                    accept();
+                } else if (key.isReadable()) {
+                    receive();
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null)
+            return;
+        if (client != null) {
+            channel.close(); // already reading another sender
+            return;
+        }
+        client = channel;
+        client.configureBlocking(false);
+        client.register(selector, SelectionKey.OP_READ);
+        decoder.reset();
+    }
+
+
+    private void receive() throws IOException {
+        buffer.clear();
+        int read = client.read(buffer);
+        buffer.flip();
+        if (read < 0) {
+            // the sender disconnected : waits for the next one
+            client.close();
+            client = null;
+        }
+    }
+
+
+    @Override
+    public long getMalformedCount() {
+        return decoder.getMalformedCount();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        if (client != null)
+            client.close();
+        server.close();
+        selector.close();
+    }
+
+}
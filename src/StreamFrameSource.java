@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads frames from an input stream, standard input for instance. This class
+ * also holds the reading loop of the other sources based on a stream, which
+ * decide what happens at the end of the stream.
+ */
+public class StreamFrameSource implements FrameSource {
+
+    private InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position = 0, limit = 0; // the bytes of the buffer not decoded yet
+    protected final FrameDecoder decoder = new FrameDecoder();
+
+
+    /**
+     * @param in the stream to read, text or binary. If it is null, the
+     *           stream is opened by {@link #endOfStream(InputStream)} when
+     *           the first frame is read.
+     */
+    public StreamFrameSource(InputStream in) {
+        this.in = in;
+    }
+
+
+    @Override
+    public boolean read(Frame frame) throws IOException {
+        while (true) {
+            if (position < limit) {
+                int end = decoder.decode(buffer, position, limit, frame);
+                if (end >= 0) {
+                    position = end;
+                    return true;
+                }
+            }
+
+            int read = in == null ? -1 : in.read(buffer);
+            if (read < 0) {
+                if ((in = endOfStream(in)) == null)
+                    return false;
+                read = 0;
+            }
+            position = 0;
+            limit = read;
+        }
+    }
+
+
+    /**
+     * called when the end of the stream is reached.
+     *
+     * @param ended the stream which ended, or null if no stream was given
+     * @return the stream to read from now on, or null if there is nothing
+     * more to read
+     * @throws IOException
+     */
+    protected InputStream endOfStream(InputStream ended) throws IOException {
+        return null;
+    }
+
+
+    @Override
+    public long getMalformedCount() {
+        return decoder.getMalformedCount();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        if (in != null)
+            in.close();
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Follows the timing of a live stream, from the timestamps and the sequence
+ * numbers of its frames (see {@link Frame}) :
+ * <ul>
+ * <li>the rate at which the frames were captured, told by their
+ * timestamps</li>
+ * <li>the jitter : how much the time between the arrival of two frames
+ * differs from the time between their capture. It is computed as in RTP (RFC
+ * 3550) : the mean of this difference, smoothed over the last 16 frames or
+ * so. Without timestamps, the frames are expected to arrive at a steady
+ * rate.</li>
+ * <li>the frames lost : the gaps in the sequence numbers. A sequence number
+ * which goes backwards starts a new stream.</li>
+ * </ul>
+ * The timing is updated by the thread reading the stream only, without lock
+ * nor allocation, and can be read from any thread.
+ */
+public class StreamTiming {
+
+    private static final int SMOOTHING = 16;
+
+    // the last frame received
+    private long lastSequence = -1, lastReceived = -1, lastTimestamp = -1;
+    // the mean time between two frames, in microseconds
+    private double arrivalInterval = 0;
+    private volatile double captureInterval = 0;
+    private volatile double jitter = 0;
+    private volatile long lost = 0, restarts = 0;
+
+
+    /**
+     * takes a frame received into account. Reading thread only.
+     *
+     * @param frame the frame, with its sequence number, its timestamp (if the
+     *              stream tells) and the time it was received
+     */
+    public void frameReceived(Frame frame) {
+        long gap = frame.sequence - lastSequence;
+        if (lastSequence >= 0 && frame.sequence >= 0 && gap <= 0) {
+            // a new stream : the previous frame tells nothing about this one
+            restarts++;
+            lastReceived = lastTimestamp = -1;
+        } else if (lastSequence >= 0 && gap > 1) {
+            lost += gap - 1;
+        }
+
+        if (lastReceived >= 0 && frame.receivedNanos >= 0) {
+            double arrival = (frame.receivedNanos - lastReceived) / 1000.0;
+            double expected;
+            if (frame.timestamp >= 0 && lastTimestamp >= 0) {
+                expected = frame.timestamp - lastTimestamp;
+                captureInterval = smooth(captureInterval, expected / Math.max(1, gap));
+            } else {
+                expected = arrivalInterval;
+            }
+            arrivalInterval = smooth(arrivalInterval, arrival);
+            jitter += (Math.abs(arrival - expected) - jitter) / SMOOTHING;
+        }
+
+        lastSequence = frame.sequence;
+        lastReceived = frame.receivedNanos;
+        lastTimestamp = frame.timestamp;
+    }
+
+
+    private static double smooth(double mean, double value) {
+        return mean == 0 ? value : mean + (value - mean) / SMOOTHING;
+    }
+
+
+    /**
+     * @return the number of frames captured per second, told by their
+     * timestamps, or 0 if the stream has no timestamps
+     */
+    public double getCaptureRate() {
+        double interval = captureInterval;
+        return interval > 0 ? 1e6 / interval : 0;
+    }
+
+
+    /**
+     * @return the jitter of the stream, in microseconds
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+
+    /**
+     * @return the number of frames missing from the sequence numbers received
+     */
+    public long getLostCount() {
+        return lost;
+    }
+
+
+    /**
+     * @return the number of times the sequence numbers started again, i.e.
+     * the number of new streams
+     */
+    public long getRestartCount() {
+        return restarts;
+    }
+
+}
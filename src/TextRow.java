@@ -0,0 +1,102 @@
+import java.awt.*;
+
+/**
+ * A line of text built and drawn without allocating anything, unlike string
+ * concatenations or {@link String#format(String, Object...)}. Meant to be
+ * reused : clear it, append the text and numbers, and draw it.
+ */
+public class TextRow {
+
+    private char[] chars;
+    private int length = 0;
+
+
+    /**
+     * @param capacity the initial number of characters the row can hold
+     */
+    public TextRow(int capacity) {
+        this.chars = new char[capacity];
+    }
+
+
+    /**
+     * empties the row.
+     *
+     * @return this row
+     */
+    public TextRow clear() {
+        length = 0;
+        return this;
+    }
+
+
+    /**
+     * @param text the text to append
+     * @return this row
+     */
+    public TextRow append(String text) {
+        ensureCapacity(length + text.length());
+        text.getChars(0, text.length(), chars, length);
+        length += text.length();
+        return this;
+    }
+
+
+    /**
+     * @param value the number to append
+     * @return this row
+     */
+    public TextRow append(long value) {
+        return append(value, 1);
+    }
+
+
+    /**
+     * appends a number, with leading zeroes if it has less than the given
+     * number of digits.
+     *
+     * @param value  the number to append
+     * @param digits the minimal number of digits
+     * @return this row
+     */
+    public TextRow append(long value, int digits) {
+        if (value < 0) {
+            ensureCapacity(length + 1);
+            chars[length++] = '-';
+            value = -value;
+        }
+
+        int n = 1;
+        for (long v = value / 10; v > 0; v /= 10)
+            n++;
+        n = Math.max(n, digits);
+
+        ensureCapacity(length + n);
+        for (int i = length + n - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += n;
+        return this;
+    }
+
+
+    /**
+     * draws the row, its baseline at (x, y).
+     *
+     * @param g the graphics to draw with
+     */
+    public void draw(Graphics g, int x, int y) {
+        g.drawChars(chars, 0, length, x, y);
+    }
+
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length) {
+            char[] bigger = new char[Math.max(capacity, chars.length * 2)];
+            System.arraycopy(chars, 0, bigger, 0, length);
+            chars = bigger;
+        }
+    }
+
+}
@@ -0,0 +1,369 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.awt.*;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures where the time goes in a viewer, from the reception of a frame to
+ * its painting :
+ * <ul>
+ * <li>the number of frames received, and the rate at which they arrive</li>
+ * <li>the time spent decoding each frame (parse latency)</li>
+ * <li>the time spent painting the viewer (paint latency)</li>
+ * <li>the time between the reception of a frame and the end of its painting
+ * (end-to-end latency)</li>
+ * <li>the frames never painted because a newer one replaced them, and the
+ * malformed values met</li>
+ * <li>the timing of the stream, from the timestamps and the sequence numbers
+ * of the frames : the rate at which they were captured, their jitter, and the
+ * frames lost on the way (see {@link StreamTiming})</li>
+ * <li>the time between the capture of a frame and the end of its painting
+ * (capture latency), for the frames with a timestamp. It compares the clock of
+ * the robot with the clock of the viewer, with a millisecond resolution : it
+ * is only meaningful if both clocks are synchronized, for instance when the
+ * timestamps are added by a bridge running on the same machine as the
+ * viewer.</li>
+ * <li>the time spent in each stage of the filters, if any (see
+ * {@link FilterPipeline})</li>
+ * </ul>
+ * The metrics can be drawn over the viewer (see {@link #draw(Graphics, int,
+ * int)}), and are exported through JMX once {@link #register(String)} is
+ * called, under <code>kjunior:type=ViewerMetrics</code>.
+ * <p/>
+ * Measuring a frame costs a few calls to {@link System#nanoTime()} and a few
+ * atomic increments, without lock nor allocation, so the metrics can stay
+ * enabled.
+ */
+public class ViewerMetrics implements ViewerMetricsMBean {
+
+    private static final long RATE_WINDOW = 1000000000L; // ns
+    private static final Color BACKGROUND = new Color(255, 255, 255, 200);
+
+    private final LatencyHistogram parse = new LatencyHistogram();
+    private final LatencyHistogram paint = new LatencyHistogram();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final LatencyHistogram capture = new LatencyHistogram();
+    private final StreamTiming timing = new StreamTiming();
+    private volatile FilterPipeline filters = null;
+    private final AtomicLong received = new AtomicLong(), painted = new AtomicLong();
+    private volatile long malformed = 0;
+    private long lastPainted = -1; // the reception time of the last frame painted
+
+    // the ingest rate, computed at most once per window
+    private long rateCount = 0, rateTime = System.nanoTime();
+    private double rate = 0;
+
+    private final TextRow[] rows = {new TextRow(80), new TextRow(80), new TextRow(80), new TextRow(80),
+            new TextRow(120), new TextRow(120)};
+
+
+    /**
+     * exports the metrics through JMX. Failing to do so is not fatal : it is
+     * only reported.
+     *
+     * @param name the name of the viewer
+     */
+    public void register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("kjunior:type=ViewerMetrics,name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            System.err.println("the metrics of " + name + " are not exported : " + e);
+        }
+    }
+
+
+    /**
+     * counts a frame received by a live viewer, and follows the timing of the
+     * stream. Reading thread only.
+     *
+     * @param frame the frame, with the time it was received and decoded
+     */
+    public void frameReceived(Frame frame) {
+        timing.frameReceived(frame);
+        frameReceived(frame.parseNanos);
+    }
+
+
+    /**
+     * counts a frame received. Reading thread only.
+     *
+     * @param parseNanos the time spent decoding the frame
+     */
+    public void frameReceived(long parseNanos) {
+        parse.record(parseNanos);
+        received.incrementAndGet();
+    }
+
+
+    /**
+     * shows the cost of each stage of the filters applied to the frames.
+     *
+     * @param filters the filters, or null if there are none
+     */
+    public void setFilters(FilterPipeline filters) {
+        this.filters = filters;
+    }
+
+
+    /**
+     * @param count the number of malformed values met so far
+     */
+    public void setMalformedCount(long count) {
+        this.malformed = count;
+    }
+
+
+    /**
+     * counts a paint of the viewer. Painting thread only.
+     *
+     * @param paintStart    the time the painting started, from
+     *                      {@link System#nanoTime()}
+     * @param frameReceived the time the frame painted was received, from
+     *                      {@link System#nanoTime()}
+     * @return true if the frame was painted for the first time, false if it
+     * was only repainted
+     */
+    public boolean framePainted(long paintStart, long frameReceived) {
+        long now = System.nanoTime();
+        paint.record(now - paintStart);
+        if (frameReceived != lastPainted && frameReceived >= 0) {
+            // a new frame, not only a repaint
+            lastPainted = frameReceived;
+            painted.incrementAndGet();
+            endToEnd.record(now - frameReceived);
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * counts a paint of a live viewer, and measures the capture latency of
+     * the frame if it has a timestamp. Painting thread only.
+     *
+     * @param paintStart the time the painting started, from
+     *                   {@link System#nanoTime()}
+     * @param frame      the frame painted
+     */
+    public void framePainted(long paintStart, Frame frame) {
+        if (framePainted(paintStart, frame.receivedNanos) && frame.timestamp >= 0) {
+            long latency = System.currentTimeMillis() * 1000 - frame.timestamp;
+            capture.record(Math.max(0, latency) * 1000); // negative when the clocks differ
+        }
+    }
+
+
+    /**
+     * draws the metrics, on 5 lines (6 with filters), over a translucent
+     * background.
+     * Allocates nothing. Painting thread only.
+     *
+     * @param g the graphics to draw with
+     * @param x the left of the text
+     * @param y the top of the background
+     */
+    public void draw(Graphics g, int x, int y) {
+        rows[0].clear().append("ingest : ").append(Math.round(getIngestRate()))
+                .append(" frames/s   received : ").append(getFramesReceived());
+        rows[1].clear().append("parse : p50 ").append(getParseLatencyP50())
+                .append(" us   p99 ").append(getParseLatencyP99()).append(" us");
+        rows[2].clear().append("paint : p50 ").append(getPaintLatencyP50())
+                .append(" us   p99 ").append(getPaintLatencyP99())
+                .append(" us   max ").append(getPaintLatencyMax()).append(" us");
+        rows[3].clear().append("line to screen : p50 ").append(getEndToEndLatencyP50())
+                .append(" us   p99 ").append(getEndToEndLatencyP99())
+                .append(" us   dropped : ").append(getDroppedFrames())
+                .append("   malformed : ").append(getMalformedCount());
+        rows[4].clear().append("stream : ").append(Math.round(getCaptureRate()))
+                .append(" lines/s   jitter ").append(Math.round(getJitter()))
+                .append(" us   lost : ").append(getLostFrames());
+        if (capture.getCount() > 0) {
+            rows[4].append("   capture to screen : p50 ").append(getCaptureLatencyP50())
+                    .append(" us   p99 ").append(getCaptureLatencyP99()).append(" us");
+        }
+
+        int nbrOfRows = rows.length - 1;
+        FilterPipeline pipeline = filters;
+        if (pipeline != null && pipeline.getNbrOfStages() > 0) {
+            rows[nbrOfRows].clear().append(pipeline.isEnabled() ? "filters : p50" : "filters (off) : p50");
+            for (int i = 0; i < pipeline.getNbrOfStages(); i++) {
+                rows[nbrOfRows].append("   ").append(pipeline.getName(i)).append(" ")
+                        .append(pipeline.getCost(i).getPercentile(50)).append(" ns");
+            }
+            nbrOfRows++;
+        }
+
+        int lineHeight = g.getFontMetrics().getHeight();
+        g.setColor(BACKGROUND);
+        g.fillRect(x - 5, y, 520, nbrOfRows * lineHeight + 6);
+        g.setColor(Color.BLACK);
+        for (int i = 0; i < nbrOfRows; i++)
+            rows[i].draw(g, x, y + (i + 1) * lineHeight);
+    }
+
+
+    @Override
+    public long getFramesReceived() {
+        return received.get();
+    }
+
+
+    @Override
+    public synchronized double getIngestRate() {
+        long now = System.nanoTime();
+        if (now - rateTime >= RATE_WINDOW) {
+            long count = received.get();
+            rate = (count - rateCount) * 1e9 / (now - rateTime);
+            rateCount = count;
+            rateTime = now;
+        }
+        return rate;
+    }
+
+
+    @Override
+    public double getParseLatencyMean() {
+        return parse.getMean() / 1000;
+    }
+
+
+    @Override
+    public long getParseLatencyP50() {
+        return parse.getPercentile(50) / 1000;
+    }
+
+
+    @Override
+    public long getParseLatencyP99() {
+        return parse.getPercentile(99) / 1000;
+    }
+
+
+    @Override
+    public double getPaintLatencyMean() {
+        return paint.getMean() / 1000;
+    }
+
+
+    @Override
+    public long getPaintLatencyP50() {
+        return paint.getPercentile(50) / 1000;
+    }
+
+
+    @Override
+    public long getPaintLatencyP99() {
+        return paint.getPercentile(99) / 1000;
+    }
+
+
+    @Override
+    public long getPaintLatencyMax() {
+        return paint.getMax() / 1000;
+    }
+
+
+    @Override
+    public long getEndToEndLatencyP50() {
+        return endToEnd.getPercentile(50) / 1000;
+    }
+
+
+    @Override
+    public long getEndToEndLatencyP99() {
+        return endToEnd.getPercentile(99) / 1000;
+    }
+
+
+    @Override
+    public long getEndToEndLatencyMax() {
+        return endToEnd.getMax() / 1000;
+    }
+
+
+    @Override
+    public long getCaptureLatencyP50() {
+        return capture.getPercentile(50) / 1000;
+    }
+
+
+    @Override
+    public long getCaptureLatencyP99() {
+        return capture.getPercentile(99) / 1000;
+    }
+
+
+    @Override
+    public long getCaptureLatencyMax() {
+        return capture.getMax() / 1000;
+    }
+
+
+    @Override
+    public double getCaptureRate() {
+        return timing.getCaptureRate();
+    }
+
+
+    @Override
+    public double getJitter() {
+        return timing.getJitter();
+    }
+
+
+    @Override
+    public long getLostFrames() {
+        return timing.getLostCount();
+    }
+
+
+    @Override
+    public String[] getFilterCosts() {
+        FilterPipeline pipeline = filters;
+        if (pipeline == null)
+            return new String[0];
+        String[] costs = new String[pipeline.getNbrOfStages()];
+        for (int i = 0; i < costs.length; i++) {
+            LatencyHistogram cost = pipeline.getCost(i);
+            costs[i] = pipeline.getName(i) + " : p50 " + cost.getPercentile(50) + " ns, p99 "
+                    + cost.getPercentile(99) + " ns, max " + cost.getMax() + " ns";
+        }
+        return costs;
+    }
+
+
+    @Override
+    public long getFramesPainted() {
+        return painted.get();
+    }
+
+
+    @Override
+    public long getDroppedFrames() {
+        // the last frame received may still be waiting for its painting
+        return Math.max(0, received.get() - painted.get() - 1);
+    }
+
+
+    @Override
+    public long getMalformedCount() {
+        return malformed;
+    }
+
+
+    @Override
+    public void resetLatencies() {
+        parse.reset();
+        paint.reset();
+        endToEnd.reset();
+        capture.reset();
+        FilterPipeline pipeline = filters;
+        if (pipeline != null) {
+            for (int i = 0; i < pipeline.getNbrOfStages(); i++)
+                pipeline.getCost(i).reset();
+        }
+    }
+
+}
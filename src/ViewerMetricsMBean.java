@@ -0,0 +1,95 @@
+/**
+ * The metrics of a viewer, as exported through JMX (see
+ * {@link ViewerMetrics}). The latencies are in microseconds.
+ */
+public interface ViewerMetricsMBean {
+
+    /**
+     * @return the number of frames received (or read from the file) so far
+     */
+    long getFramesReceived();
+
+    /**
+     * @return the number of frames received per second, over the last second
+     */
+    double getIngestRate();
+
+    double getParseLatencyMean();
+
+    long getParseLatencyP50();
+
+    long getParseLatencyP99();
+
+    double getPaintLatencyMean();
+
+    long getPaintLatencyP50();
+
+    long getPaintLatencyP99();
+
+    long getPaintLatencyMax();
+
+    /**
+     * @return the median time between the reception of a frame and the end of
+     * its painting
+     */
+    long getEndToEndLatencyP50();
+
+    long getEndToEndLatencyP99();
+
+    long getEndToEndLatencyMax();
+
+    /**
+     * @return the median time between the capture of a frame, told by its
+     * timestamp, and the end of its painting
+     */
+    long getCaptureLatencyP50();
+
+    long getCaptureLatencyP99();
+
+    long getCaptureLatencyMax();
+
+    /**
+     * @return the number of frames captured per second, told by their
+     * timestamps, or 0 if the stream has none
+     */
+    double getCaptureRate();
+
+    /**
+     * @return how much the time between the arrival of two frames differs
+     * from the time between their capture, on average
+     */
+    double getJitter();
+
+    /**
+     * @return the number of frames missing from the sequence numbers received
+     */
+    long getLostFrames();
+
+    /**
+     * @return the time spent in each stage of the filters, per frame, in
+     * nanoseconds
+     */
+    String[] getFilterCosts();
+
+    /**
+     * @return the number of frames painted
+     */
+    long getFramesPainted();
+
+    /**
+     * @return the number of frames received but never painted, because a
+     * newer frame replaced them before the screen was repainted
+     */
+    long getDroppedFrames();
+
+    /**
+     * @return the number of malformed values met in the text format
+     */
+    long getMalformedCount();
+
+    /**
+     * forgets the latencies measured so far.
+     */
+    void resetLatencies();
+
+}
@@ -0,0 +1,148 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shows the last lines seen by the camera stacked on top of each other, the
+ * newest at the bottom : a "waterfall" which scrolls up as lines arrive.
+ * <p/>
+ * The history is a ring buffer of bytes, which is also the content of the
+ * image drawn : adding a line only writes its 102 values in the row following
+ * the previous line, the other rows are not touched. Painting draws the ring
+ * in two slices (from the oldest line to the end of the buffer, then from its
+ * beginning to the newest line), scaled to the size of the panel.
+ * <p/>
+ * Lines can be added from any thread, without blocking : the repaints are
+ * coalesced.
+ */
+public class WaterfallPanel extends JPanel {
+
+    /**
+     * the system property holding the number of lines of the history
+     */
+    public static final String LINES_PROPERTY = "kjunior.waterfall.lines";
+
+    private final int capacity; // the number of lines in the history
+    private final BufferedImage image; // one row per line
+    private final byte[] ring; // the pixels of the image
+    private volatile long count = 0; // the number of lines added so far
+
+    private final int offsetX, pixelWidth;
+    private final AtomicBoolean repaintPending = new AtomicBoolean(false);
+    private final Runnable repaint = new Runnable() {
+        @Override
+        public void run() {
+            repaintPending.set(false);
+            repaint();
+        }
+    };
+
+
+    /**
+     * creates a waterfall holding the number of lines given by the
+     * {@value #LINES_PROPERTY} system property (2000 by default).
+     *
+     * @param offsetX    the left of the first pixel, to align the waterfall
+     *                   with the line displayed above it
+     * @param pixelWidth the width of a pixel
+     * @param height     the preferred height of the panel
+     */
+    public WaterfallPanel(int offsetX, int pixelWidth, int height) {
+        this(Integer.getInteger(LINES_PROPERTY, 2000), offsetX, pixelWidth, height);
+    }
+
+
+    /**
+     * @param capacity   the number of lines of the history
+     * @param offsetX    the left of the first pixel, to align the waterfall
+     *                   with the line displayed above it
+     * @param pixelWidth the width of a pixel
+     * @param height     the preferred height of the panel
+     */
+    public WaterfallPanel(int capacity, int offsetX, int pixelWidth, int height) {
+        this.capacity = capacity;
+        this.offsetX = offsetX;
+        this.pixelWidth = pixelWidth;
+
+        byte[] levels = new byte[256];
+        for (int i = 0; i < levels.length; i++)
+            levels[i] = (byte) i;
+        this.image = new BufferedImage(Capture.FRAME_WIDTH, capacity, BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(8, 256, levels, levels, levels));
+        this.ring = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+
+        this.setPreferredSize(new Dimension(offsetX + Capture.FRAME_WIDTH * pixelWidth + 20, height));
+    }
+
+
+    /**
+     * adds a line at the bottom of the waterfall, replacing the oldest one
+     * if the history is full. Only one thread may add lines.
+     *
+     * @param pixels the 102 values of the line, between 0 and 255
+     */
+    public void addLine(int[] pixels) {
+        int row = (int) (count % capacity) * Capture.FRAME_WIDTH;
+        for (int i = 0; i < Capture.FRAME_WIDTH; i++)
+            ring[row + i] = (byte) pixels[i];
+        count++;
+
+        if (repaintPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(repaint);
+        }
+    }
+
+
+    /**
+     * empties the history. Must be called by the thread adding the lines.
+     */
+    public void clear() {
+        count = 0;
+        repaint();
+    }
+
+
+    /**
+     * @return the number of lines of the history
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    @Override
+    public void paint(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        long lines = count;
+        if (lines == 0)
+            return;
+
+        int width = Capture.FRAME_WIDTH * pixelWidth;
+        int height = getHeight();
+        int newest = (int) ((lines - 1) % capacity); // row of the newest line
+
+        // each line of the history gets the same height, the newest line
+        // touching the bottom of the panel
+        int top = height - heightOf(newest + 1, height);
+
+        // from the beginning of the ring to the newest line
+        g.drawImage(image, offsetX, top, offsetX + width, height,
+                0, 0, Capture.FRAME_WIDTH, newest + 1, null);
+        if (lines > capacity) {
+            // from the oldest line to the end of the ring, above
+            g.drawImage(image, offsetX, 0, offsetX + width, top,
+                    0, newest + 1, Capture.FRAME_WIDTH, capacity, null);
+        }
+    }
+
+
+    private int heightOf(int rows, int height) {
+        return (int) ((long) rows * height / capacity);
+    }
+
+}